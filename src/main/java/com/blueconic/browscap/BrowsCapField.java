@@ -0,0 +1,46 @@
+package com.blueconic.browscap;
+
+/**
+ * The BrowsCap fields of the {@link Capabilities}, which can be read by value or by code.
+ * @see Capabilities#getValue(BrowsCapField)
+ * @see Capabilities#getCode(BrowsCapField)
+ * @see Capabilities#getValues(BrowsCapField)
+ */
+public enum BrowsCapField {
+
+    /** The browser (e.g. Chrome) */
+    BROWSER,
+
+    /** The browser type (e.g. Browser or Application) */
+    BROWSER_TYPE,
+
+    /** The major version of the browser (e.g. 55 in case of Chrome) */
+    BROWSER_MAJOR_VERSION,
+
+    /** The device type (e.g. Mobile Phone, Desktop, Tablet, Console, TV Device) */
+    DEVICE_TYPE,
+
+    /** The platform name (e.g. Android, iOS, Win7, Win10) */
+    PLATFORM,
+
+    /** The platform version (e.g. 4.2, 10 depending on what the platform is) */
+    PLATFORM_VERSION,
+
+    /** The property's comment */
+    COMMENT,
+
+    /** The device name */
+    DEVICE_NAME,
+
+    /** The device code name */
+    DEVICE_CODE_NAME,
+
+    /** The platform's maker */
+    PLATFORM_MAKER,
+
+    /** The device maker */
+    DEVICE_MAKER,
+
+    /** The device brand name */
+    DEVICE_BRAND_NAME
+}
@@ -0,0 +1,295 @@
+package com.blueconic.browscap;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.blueconic.browscap.impl.Rule;
+
+/**
+ * Parser which caches the results of another parser for a bounded number of useragents. Reads don't lock. When the
+ * cache is full, a new useragent only replaces the oldest one if it has been requested more often recently, based on
+ * an approximate frequency sketch (TinyLFU). This way a flood of unique useragents can't evict the frequent ones.
+ * When the parser is a {@link ReloadableUserAgentParser}, the cached capabilities are dropped as soon as it's reloaded.
+ */
+public class CachingUserAgentParser implements UserAgentParser {
+
+    // The parser which determines the capabilities of uncached useragents
+    private final UserAgentParser myParser;
+
+    // The maximum number of cached useragents
+    private final int myMaximumSize;
+
+    // The cached capabilities of the current parser, which are replaced as a whole when it's reloaded or cleared
+    private volatile Cache myCache;
+
+    // The recent frequency of all requested useragents
+    private final FrequencySketch mySketch;
+
+    // Statistics
+    private final LongAdder myHits = new LongAdder();
+    private final LongAdder myMisses = new LongAdder();
+    private final LongAdder myEvictions = new LongAdder();
+    private final LongAdder myLoadTime = new LongAdder();
+
+    /**
+     * Creates a new caching parser.
+     * @param parser The parser to delegate to
+     * @param maximumSize The maximum number of cached useragents
+     */
+    public CachingUserAgentParser(final UserAgentParser parser, final int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("The maximum size should be positive: " + maximumSize);
+        }
+        myParser = parser;
+        myMaximumSize = maximumSize;
+        myCache = new Cache(getCurrentParser(), maximumSize);
+        mySketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Capabilities parse(final String userAgent) {
+        if (userAgent == null) {
+            return myParser.parse(userAgent);
+        }
+
+        mySketch.increment(userAgent.hashCode());
+        final UserAgentParser parser = getCurrentParser();
+        final Cache cache = getCache(parser);
+        final Capabilities cached = cache.myCapabilities.get(userAgent);
+        if (cached != null) {
+            myHits.increment();
+            return cached;
+        }
+        myMisses.increment();
+
+        final long start = System.nanoTime();
+        final Capabilities result = parser.parse(userAgent);
+        myLoadTime.add(System.nanoTime() - start);
+
+        // If the cache has been replaced in the meantime, the result ends up in the old one and is never returned
+        admit(cache, userAgent, result);
+        return result;
+    }
+
+    /**
+     * {@inheritDoc} The patterns aren't cached.
+     */
+    @Override
+    public String getPattern(final String userAgent) {
+        return myParser.getPattern(userAgent);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Rule[] getRules() {
+        return myParser.getRules();
+    }
+
+    /**
+     * Removes all cached useragents. The statistics are kept. This isn't needed after reloading a
+     * {@link ReloadableUserAgentParser}, since the cache is replaced automatically in that case.
+     */
+    public synchronized void clear() {
+        myCache = new Cache(myCache.myParser, myMaximumSize);
+    }
+
+    /**
+     * Returns the number of cached useragents.
+     * @return the number of cached useragents
+     */
+    public int size() {
+        return myCache.myCapabilities.size();
+    }
+
+    /**
+     * Returns the number of lookups which were answered from the cache.
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return myHits.sum();
+    }
+
+    /**
+     * Returns the number of lookups which were delegated to the underlying parser.
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return myMisses.sum();
+    }
+
+    /**
+     * Returns the fraction of the lookups which were answered from the cache.
+     * @return the hit ratio, or 0 if there haven't been any lookups
+     */
+    public double getHitRatio() {
+        final long hits = getHitCount();
+        final long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Returns the number of useragents which have been removed from the cache to make room for more frequent ones.
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return myEvictions.sum();
+    }
+
+    /**
+     * Returns the total time spent in the underlying parser for the misses.
+     * @return the total load time in nanoseconds
+     */
+    public long getTotalLoadTime() {
+        return myLoadTime.sum();
+    }
+
+    // The parser which currently determines the capabilities, which changes when a reloadable parser is reloaded
+    private UserAgentParser getCurrentParser() {
+        if (myParser instanceof ReloadableUserAgentParser) {
+            return ((ReloadableUserAgentParser) myParser).getParser();
+        }
+        return myParser;
+    }
+
+    // The cache for the results of a parser, which replaces the current cache if it belongs to another parser
+    private Cache getCache(final UserAgentParser parser) {
+        final Cache cache = myCache;
+        if (cache.myParser == parser) {
+            return cache;
+        }
+        synchronized (this) {
+            if (myCache.myParser != parser) {
+                myCache = new Cache(parser, myMaximumSize);
+            }
+            return myCache;
+        }
+    }
+
+    // Cache the result if there is room, or if the useragent is more frequent than the oldest cached one
+    private void admit(final Cache cache, final String userAgent, final Capabilities result) {
+        synchronized (cache.myQueue) {
+            if (cache.myCapabilities.containsKey(userAgent)) {
+                return;
+            }
+
+            if (cache.myQueue.size() >= myMaximumSize) {
+                final String victim = cache.myQueue.poll();
+                if (mySketch.frequency(userAgent.hashCode()) <= mySketch.frequency(victim.hashCode())) {
+                    // Keep the victim, but give the next one a chance on the next miss
+                    cache.myQueue.add(victim);
+                    return;
+                }
+                cache.myCapabilities.remove(victim);
+                myEvictions.increment();
+            }
+
+            cache.myQueue.add(userAgent);
+            cache.myCapabilities.put(userAgent, result);
+        }
+    }
+
+    /**
+     * The cached capabilities, which are only valid for the parser which determined them.
+     */
+    private static final class Cache {
+
+        // The parser which determined the cached capabilities
+        private final UserAgentParser myParser;
+
+        // The cached capabilities
+        private final Map<String, Capabilities> myCapabilities;
+
+        // The cached useragents, oldest first; guarded by itself
+        private final ArrayDeque<String> myQueue = new ArrayDeque<>();
+
+        Cache(final UserAgentParser parser, final int maximumSize) {
+            myParser = parser;
+            myCapabilities = new ConcurrentHashMap<>(maximumSize);
+        }
+    }
+
+    /**
+     * Count-min sketch with four 4 bit counters per hash, which are halved periodically so the frequencies reflect
+     * recent usage. The counters are updated with compare-and-set, so a counter never overflows into its neighbour.
+     * The number of increments isn't synchronized, so concurrent threads may halve the counters a bit later.
+     */
+    private static class FrequencySketch {
+
+        private static final int[] SEEDS = {0x97cb3127, 0xb492b66f, 0x9ae16a3b, 0xc2b2ae35};
+
+        // Eight 4 bit counters per element
+        private final AtomicIntegerArray myTable;
+        private final int myMask;
+
+        // The number of increments after which all counters are halved
+        private final int mySampleSize;
+        private int myAdditions;
+
+        FrequencySketch(final int maximumSize) {
+            final int size = Integer.highestOneBit(Math.max(16, Math.min(maximumSize, 1 << 26)) - 1) << 1;
+            myTable = new AtomicIntegerArray(size);
+            myMask = size - 1;
+            mySampleSize = 10 * Math.min(maximumSize, Integer.MAX_VALUE / 10);
+        }
+
+        int frequency(final int hashCode) {
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                final int hash = hash(hashCode, i);
+                frequency = Math.min(frequency, (myTable.get(hash & myMask) >>> getShift(hash)) & 15);
+            }
+            return frequency;
+        }
+
+        void increment(final int hashCode) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                final int hash = hash(hashCode, i);
+                added |= increment(hash & myMask, getShift(hash));
+            }
+            if (added && ++myAdditions >= mySampleSize) {
+                reset();
+            }
+        }
+
+        // Increment a counter unless it's saturated, so frequent useragents don't contend, returns whether it changed
+        private boolean increment(final int index, final int shift) {
+            while (true) {
+                final int value = myTable.get(index);
+                if (((value >>> shift) & 15) == 15) {
+                    return false;
+                }
+                if (myTable.compareAndSet(index, value, value + (1 << shift))) {
+                    return true;
+                }
+            }
+        }
+
+        // Halve all counters
+        private void reset() {
+            myAdditions = 0;
+            for (int i = 0; i < myTable.length(); i++) {
+                myTable.getAndUpdate(i, value -> (value >>> 1) & 0x77777777);
+            }
+        }
+
+        private static int hash(final int hashCode, final int i) {
+            int hash = hashCode * SEEDS[i];
+            hash ^= hash >>> 16;
+            return hash;
+        }
+
+        // The counter within the element, based on the bits which aren't used for the index
+        private static int getShift(final int hash) {
+            return (hash >>> 29) << 2;
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package com.blueconic.browscap;
 
+import java.util.Collections;
+import java.util.List;
+
 public interface Capabilities {
     String UNKNOWN_BROWSCAP_VALUE = "Unknown";
 
     /**
-     * Returns the pattern's regex value (e.g. Chrome)
+     * Returns the regex of the pattern of the rule which matched the useragent (e.g. ^mozilla/5.0 .*?chrome/58.*?$).
+     * The capabilities of the parsers of this library are shared by all rules with equal properties, so they return
+     * {@link #UNKNOWN_BROWSCAP_VALUE}; the pattern is returned by {@link UserAgentParser#getPattern(String)} instead.
      * @return the pattern's regex
      */
     String getPattern();
@@ -80,4 +85,64 @@ public interface Capabilities {
      * @return the device brand name
      */
     String getDeviceBrandName();
+
+    /**
+     * Returns the value of a field.
+     * @param field The field
+     * @return the value of the field
+     */
+    default String getValue(final BrowsCapField field) {
+        switch (field) {
+            case BROWSER:
+                return getBrowser();
+            case BROWSER_TYPE:
+                return getBrowserType();
+            case BROWSER_MAJOR_VERSION:
+                return getBrowserMajorVersion();
+            case DEVICE_TYPE:
+                return getDeviceType();
+            case PLATFORM:
+                return getPlatform();
+            case PLATFORM_VERSION:
+                return getPlatformVersion();
+            case COMMENT:
+                return getComment();
+            case DEVICE_NAME:
+                return getDeviceName();
+            case DEVICE_CODE_NAME:
+                return getDeviceCodeName();
+            case PLATFORM_MAKER:
+                return getPlatformMaker();
+            case DEVICE_MAKER:
+                return getDeviceMaker();
+            case DEVICE_BRAND_NAME:
+                return getDeviceBrandName();
+            default:
+                throw new IllegalArgumentException("Unsupported field: " + field);
+        }
+    }
+
+    /**
+     * Returns the code of the value of a field, in the dictionary of the parser which returned these capabilities.
+     * Equal values of a field have equal codes within a parser, so results can be aggregated by code without
+     * comparing strings. The unknown value has code 0 in the dictionaries of the parsers of this library. The default
+     * implementation has no dictionary and returns 0, the index of the value in {@link #getValues(BrowsCapField)}.
+     * @param field The field
+     * @return the code of the value, which can be converted to the value with {@link #getValues(BrowsCapField)}
+     */
+    default int getCode(final BrowsCapField field) {
+        return 0;
+    }
+
+    /**
+     * Returns the values of a field in the dictionary of these capabilities, indexed by their code. All capabilities
+     * of a parser share the same list per field, while a parser loaded later, e.g. by a
+     * {@link ReloadableUserAgentParser}, has its own list. Codes should therefore be decoded with the list of the
+     * capabilities which returned them. The default implementation only returns the value of these capabilities.
+     * @param field The field
+     * @return an unmodifiable list of the values, of which the index is the code
+     */
+    default List<String> getValues(final BrowsCapField field) {
+        return Collections.singletonList(getValue(field));
+    }
 }
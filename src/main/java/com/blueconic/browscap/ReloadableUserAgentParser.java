@@ -0,0 +1,282 @@
+package com.blueconic.browscap;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.blueconic.browscap.impl.Rule;
+
+/**
+ * Parser which delegates to a parser that can be replaced at runtime. New parsers are loaded from a file or stream on
+ * a background thread and published atomically once they are complete, so parse calls never block and never see a
+ * partially loaded rule set. Optionally a directory can be watched for new BrowsCap files.
+ */
+public class ReloadableUserAgentParser implements UserAgentParser, Closeable {
+    private static final Logger LOGGER = Logger.getLogger(ReloadableUserAgentParser.class.getName());
+
+    // The service which loads the new parsers
+    private final UserAgentService myService = new UserAgentService();
+
+    // The single thread loading new parsers, so they are published in the order they were requested
+    private final ExecutorService myLoader = Executors.newSingleThreadExecutor(daemon("browscap-loader"));
+
+    // The files which are waiting to be loaded because of a change in the watched directory
+    private final Set<Path> myPendingFiles = ConcurrentHashMap.newKeySet();
+
+    // The current parser
+    private volatile UserAgentParser myParser;
+
+    // The service watching the directory, if any
+    private WatchService myWatchService;
+
+    /**
+     * Creates a new reloadable parser.
+     * @param parser The initial parser, e.g. as returned by {@link UserAgentService#loadParser()}
+     */
+    public ReloadableUserAgentParser(final UserAgentParser parser) {
+        setParser(parser);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Capabilities parse(final String userAgent) {
+        return myParser.parse(userAgent);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getPattern(final String userAgent) {
+        return myParser.getPattern(userAgent);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Rule[] getRules() {
+        return myParser.getRules();
+    }
+
+    /**
+     * Returns the current parser.
+     * @return the current parser
+     */
+    public UserAgentParser getParser() {
+        return myParser;
+    }
+
+    /**
+     * Replaces the current parser.
+     * @param parser The new parser
+     */
+    public void setParser(final UserAgentParser parser) {
+        if (parser == null) {
+            throw new IllegalArgumentException("A parser is required");
+        }
+        myParser = parser;
+    }
+
+    /**
+     * Loads a parser from a BrowsCap file in the background and publishes it when it's complete. The supported
+     * formats are described at {@link UserAgentService#loadParser(Path)}. The current parser is kept if loading fails.
+     * @param file The BrowsCap file
+     * @return A future for the new parser, which completes exceptionally if loading failed or if this parser has been
+     *         closed
+     */
+    public CompletableFuture<UserAgentParser> reload(final Path file) {
+        return submit(() -> myService.loadParser(file), null);
+    }
+
+    /**
+     * Loads a parser from a UTF-8 encoded BrowsCap CSV stream in the background and publishes it when it's complete.
+     * The stream is closed when it has been read, or when it won't be read because this parser has been closed. The
+     * current parser is kept if loading fails.
+     * @param csv The CSV stream
+     * @return A future for the new parser, which completes exceptionally if loading failed or if this parser has been
+     *         closed
+     */
+    public CompletableFuture<UserAgentParser> reload(final InputStream csv) {
+        return submit(() -> {
+            try (final InputStream in = csv) {
+                return myService.loadParser(in);
+            }
+        }, csv);
+    }
+
+    /**
+     * Watches a directory for new or modified BrowsCap files (<code>.csv</code>, <code>.zip</code> or
+     * <code>.snapshot</code>), which are loaded as described at {@link #reload(Path)}. Files should be moved into the
+     * directory once they are complete, otherwise a partially written file is loaded (and rejected) first. Files which
+     * can't be loaded are logged as a warning.
+     * @param directory The directory to watch
+     * @throws IOException If the directory can't be watched
+     */
+    public void watch(final Path directory) throws IOException {
+        watch(directory,
+                (file, e) -> LOGGER.log(Level.WARNING, "Unable to load the BrowsCap file " + file, e));
+    }
+
+    /**
+     * Watches a directory for new or modified BrowsCap files, like {@link #watch(Path)}, reporting the files which
+     * can't be loaded to a handler instead of logging them. The handler is called on the thread loading the parsers.
+     * @param directory The directory to watch
+     * @param failureHandler The handler, which receives the file and the reason it couldn't be loaded
+     * @throws IOException If the directory can't be watched
+     */
+    public synchronized void watch(final Path directory, final BiConsumer<Path, Throwable> failureHandler)
+            throws IOException {
+        if (myWatchService != null) {
+            throw new IllegalStateException("Already watching a directory");
+        }
+        final WatchService watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        myWatchService = watchService;
+
+        final Thread watcher = daemon("browscap-watcher")
+                .newThread(() -> watch(watchService, directory, failureHandler));
+        watcher.start();
+    }
+
+    /**
+     * Stops watching the directory and stops loading new parsers. The futures of the parsers which were waiting to be
+     * loaded complete exceptionally with a {@link CancellationException}. The current parser remains usable.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (final Runnable task : myLoader.shutdownNow()) {
+            ((LoadTask) task).cancel(new CancellationException("The parser has been closed"));
+        }
+        myPendingFiles.clear();
+        if (myWatchService != null) {
+            myWatchService.close();
+        }
+    }
+
+    private void watch(final WatchService watchService, final Path directory,
+            final BiConsumer<Path, Throwable> failureHandler) {
+        try {
+            while (true) {
+                final WatchKey key = watchService.take();
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() != OVERFLOW) {
+                        final Path file = directory.resolve((Path) event.context());
+                        if (isBrowsCapFile(file)) {
+                            reloadChanged(file, failureHandler);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    // The directory is no longer accessible
+                    return;
+                }
+            }
+        } catch (final ClosedWatchServiceException | InterruptedException e) {
+            // Stop watching
+        }
+    }
+
+    // Reload a changed file, unless it's already waiting to be loaded
+    private void reloadChanged(final Path file, final BiConsumer<Path, Throwable> failureHandler) {
+        if (myPendingFiles.add(file)) {
+            submit(() -> {
+                myPendingFiles.remove(file);
+                return myService.loadParser(file);
+            }, () -> myPendingFiles.remove(file)).whenComplete((parser, e) -> {
+                // Files which weren't loaded because this parser has been closed aren't reported
+                if (e != null && !(e instanceof CancellationException)) {
+                    failureHandler.accept(file, e);
+                }
+            });
+        }
+    }
+
+    private static boolean isBrowsCapFile(final Path file) {
+        final String fileName = file.getFileName().toString().toLowerCase();
+        return fileName.endsWith(".csv") || fileName.endsWith(UserAgentService.ZIP_EXTENSION)
+                || fileName.endsWith(UserAgentService.SNAPSHOT_EXTENSION);
+    }
+
+    // Load a parser in the background, the resources of the loader, if any, are discarded if it's never run
+    private CompletableFuture<UserAgentParser> submit(final Loader loader, final Closeable discard) {
+        final LoadTask task = new LoadTask(loader, discard);
+        try {
+            myLoader.execute(task);
+        } catch (final RejectedExecutionException e) {
+            // This parser has been closed
+            task.cancel(e);
+        }
+        return task.myResult;
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** Loads a new parser. */
+    private interface Loader {
+        UserAgentParser load() throws IOException, ParseException;
+    }
+
+    /** A parser to load, with the future for its result. */
+    private class LoadTask implements Runnable {
+        private final Loader myParserLoader;
+        private final Closeable myDiscard;
+        private final CompletableFuture<UserAgentParser> myResult = new CompletableFuture<>();
+
+        LoadTask(final Loader loader, final Closeable discard) {
+            myParserLoader = loader;
+            myDiscard = discard;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final UserAgentParser parser = myParserLoader.load();
+                setParser(parser);
+                myResult.complete(parser);
+            } catch (final Throwable e) {
+                myResult.completeExceptionally(e);
+            }
+        }
+
+        // Complete the future without loading the parser
+        void cancel(final RuntimeException reason) {
+            try {
+                if (myDiscard != null) {
+                    myDiscard.close();
+                }
+            } catch (final IOException e) {
+                reason.addSuppressed(e);
+            }
+            myResult.completeExceptionally(reason);
+        }
+    }
+}
@@ -11,6 +11,17 @@ public interface UserAgentParser {
      */
     Capabilities parse(String userAgent);
 
+    /**
+     * Returns the regex of the pattern of the best matching rule for a User-Agent header value (e.g. ^mozilla/5.0
+     * .*?chrome/58.*?$). The capabilities returned by {@link #parse(String)} may be shared by all rules with equal
+     * properties, in which case they don't know the pattern themselves.
+     * @param userAgent The user agent
+     * @return the pattern's regex, or {@link Capabilities#UNKNOWN_BROWSCAP_VALUE} if no rule matches
+     */
+    default String getPattern(final String userAgent) {
+        return parse(userAgent).getPattern();
+    }
+
     /**
      * @return Array of alphabetically sorted Rules
      */
@@ -1,39 +1,148 @@
 package com.blueconic.browscap;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import com.blueconic.browscap.impl.ParserSnapshot;
 import com.blueconic.browscap.impl.UserAgentFileParser;
 
 /**
- * Service that manages the creation of user agent parsers. In the feature, this might be expanded so it also supports
- * auto-updating or use a given InputStream
+ * Service that manages the creation of user agent parsers, based on the bundled BrowsCap version or on a given file or
+ * stream. A {@link ReloadableUserAgentParser} can be used to replace a parser at runtime.
  */
 public class UserAgentService {
+    private static final Logger LOGGER = Logger.getLogger(UserAgentService.class.getName());
+
     // The version of the browscap file this bundle depends on
     private static final int BUNDLED_BROWSCAP_VERSION = 6023;
 
+    // The extensions of the supported file formats, besides CSV
+    static final String SNAPSHOT_EXTENSION = ".snapshot";
+    static final String ZIP_EXTENSION = ".zip";
+
     /**
-     * Returns a parser based on the bundled BrowsCap version
+     * Returns a parser based on the bundled BrowsCap version. The snapshot which is generated at build time is used if
+     * it's available, otherwise the bundled CSV file is parsed. A bundled snapshot which can't be read is logged as a
+     * warning before falling back to the CSV file.
      * @return the user agent parser
      */
     public UserAgentParser loadParser() throws IOException, ParseException {
+        final UserAgentParser parser = loadBundledSnapshot();
+        if (parser != null) {
+            return parser;
+        }
+        return loadCsvParser();
+    }
+
+    /**
+     * Returns a parser based on the bundled BrowsCap CSV file, without using the prebuilt snapshot.
+     * @return the user agent parser
+     */
+    public UserAgentParser loadCsvParser() throws IOException, ParseException {
         // http://browscap.org/version-number
         final String csvFileName = "browscap-" + BUNDLED_BROWSCAP_VERSION + ".zip";
-        try (final InputStream zipStream = getClass().getClassLoader().getResourceAsStream(csvFileName);
-                final ZipInputStream zipIn = new ZipInputStream(zipStream)) {
+        try (final InputStream zipStream = getClass().getClassLoader().getResourceAsStream(csvFileName)) {
+            return loadZipParser(zipStream, csvFileName);
+        }
+    }
+
+    /**
+     * Returns a parser based on a BrowsCap file. The format is determined by the file extension: a snapshot
+     * (<code>.snapshot</code>), a zip file containing the CSV file (<code>.zip</code>) or otherwise a CSV file.
+     * @param file The BrowsCap file
+     * @return the user agent parser
+     * @throws IOException If the file can't be read
+     * @throws ParseException If the CSV file contains an invalid pattern
+     */
+    public UserAgentParser loadParser(final Path file) throws IOException, ParseException {
+        final String fileName = file.getFileName().toString().toLowerCase();
+        if (fileName.endsWith(SNAPSHOT_EXTENSION)) {
+            return loadSnapshot(file);
+        }
+        try (final InputStream in = Files.newInputStream(file)) {
+            if (fileName.endsWith(ZIP_EXTENSION)) {
+                return loadZipParser(in, fileName);
+            }
+            return loadParser(in);
+        }
+    }
+
+    /**
+     * Returns a parser based on a UTF-8 encoded BrowsCap CSV stream, e.g. a downloaded version. The stream isn't
+     * closed.
+     * @param csv The CSV stream
+     * @return the user agent parser
+     * @throws IOException If the stream can't be read
+     * @throws ParseException If the CSV stream contains an invalid pattern
+     */
+    public UserAgentParser loadParser(final InputStream csv) throws IOException, ParseException {
+        return new UserAgentFileParser().parse(csv);
+    }
+
+    // Parses the CSV file which is the first entry of the zip stream
+    private UserAgentParser loadZipParser(final InputStream zipStream, final String name)
+            throws IOException, ParseException {
+        try (final ZipInputStream zipIn = new ZipInputStream(zipStream)) {
             final ZipEntry entry = zipIn.getNextEntry();
-            if (!entry.isDirectory()) {
-                return new UserAgentFileParser().parse(new InputStreamReader(zipIn, UTF_8));
+            if (entry != null && !entry.isDirectory()) {
+                return loadParser(zipIn);
             } else {
-                throw new IOException("Unable to find BrowsCap entry: " + csvFileName);
+                throw new IOException("Unable to find BrowsCap entry: " + name);
+            }
+        }
+    }
+
+    // Returns the parser based on the bundled snapshot, or null if it isn't available
+    private UserAgentParser loadBundledSnapshot() {
+        final String snapshotFileName = "browscap-" + BUNDLED_BROWSCAP_VERSION + SNAPSHOT_EXTENSION;
+        final URL resource = getClass().getClassLoader().getResource(snapshotFileName);
+        if (resource == null) {
+            return null;
+        }
+
+        try {
+            // Map the file directly, unless it's packaged in a jar
+            if ("file".equals(resource.getProtocol())) {
+                return ParserSnapshot.read(Paths.get(resource.toURI()));
+            }
+            try (final InputStream in = resource.openStream()) {
+                return ParserSnapshot.read(in);
             }
+        } catch (final IOException | URISyntaxException e) {
+            // Fall back to the CSV file, e.g. when the snapshot has been written in an unsupported format
+            LOGGER.log(Level.WARNING, "Unable to read the bundled BrowsCap snapshot, parsing the CSV file instead", e);
+            return null;
         }
+    }
+
+    /**
+     * Returns a parser based on a snapshot file, which is written by {@link #writeSnapshot(UserAgentParser, Path)}.
+     * Loading a snapshot is much faster than parsing the BrowsCap CSV file. The file is memory mapped while it's read,
+     * but the restored parser is copied onto the heap, so it uses as much memory as a parser loaded from CSV.
+     * @param snapshot The snapshot file
+     * @return the user agent parser
+     * @throws IOException If the file can't be read or isn't a valid snapshot
+     */
+    public UserAgentParser loadSnapshot(final Path snapshot) throws IOException {
+        return ParserSnapshot.read(snapshot);
+    }
 
+    /**
+     * Writes a binary snapshot of a parser, which can be loaded by {@link #loadSnapshot(Path)}.
+     * @param parser The parser, as returned by this service
+     * @param snapshot The snapshot file
+     * @throws IOException If the file can't be written
+     */
+    public void writeSnapshot(final UserAgentParser parser, final Path snapshot) throws IOException {
+        ParserSnapshot.write(parser, snapshot);
     }
 }
@@ -0,0 +1,294 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.impl.ParserSnapshot.readChars;
+import static com.blueconic.browscap.impl.ParserSnapshot.readInts;
+import static com.blueconic.browscap.impl.ParserSnapshot.readLongs;
+import static com.blueconic.browscap.impl.ParserSnapshot.writeChars;
+import static com.blueconic.browscap.impl.ParserSnapshot.writeInts;
+import static com.blueconic.browscap.impl.ParserSnapshot.writeLongs;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trie of the prefixes or the postfixes of all rules. Walking a useragent down the trie once determines all rules of
+ * which the prefix (or postfix) matches, together with the rules without one these are the only rules which can match.
+ * Postfixes are stored reversed and matched from the end of the useragent. Question marks are represented by a
+ * separate transition which matches any character.
+ */
+class AnchorIndex {
+
+    // Rule sets with at least this number of rules are stored as a bit set, smaller ones as a list of rule indices
+    private static final int MASK_THRESHOLD = 256;
+
+    // Transitions of all nodes, ordered by node and label
+    private final int[] myChildStart;
+    private final char[] myLabels;
+    private final int[] myTargets;
+
+    // The transition for a question mark per node, or -1 if none
+    private final int[] myAnyChild;
+
+    // The rules of which the prefix ends at a node, either as a mask or as a list of rule indices
+    private final long[][] myMasks;
+    private final int[][] myRules;
+
+    // Whether the postfixes are indexed, which are matched from the end of the useragent
+    private final boolean myIsReversed;
+
+    // The rules without an anchor
+    private final long[] myUnanchoredRules;
+
+    /**
+     * Creates the index for the prefixes of the rules.
+     * @param orderedRules The rules, ordered by priority
+     * @return The index
+     */
+    static AnchorIndex forPrefixes(final Rule[] orderedRules) {
+        return new AnchorIndex(orderedRules, false);
+    }
+
+    /**
+     * Creates the index for the postfixes of the rules.
+     * @param orderedRules The rules, ordered by priority
+     * @return The index
+     */
+    static AnchorIndex forPostfixes(final Rule[] orderedRules) {
+        return new AnchorIndex(orderedRules, true);
+    }
+
+    private AnchorIndex(final Rule[] orderedRules, final boolean isReversed) {
+        myIsReversed = isReversed;
+
+        // Group the rules by their anchor
+        final Map<Literal, List<Integer>> groups = new IdentityHashMap<>();
+        final BitSet unanchoredRules = new BitSet();
+        for (int i = 0; i < orderedRules.length; i++) {
+            final Literal anchor = isReversed ? orderedRules[i].getPostfix() : orderedRules[i].getPrefix();
+            if (anchor == null) {
+                unanchoredRules.set(i);
+            } else {
+                groups.computeIfAbsent(anchor, a -> new ArrayList<>()).add(i);
+            }
+        }
+        myUnanchoredRules = unanchoredRules.toLongArray();
+
+        // Build the trie, with the transitions as {label, target} pairs per node
+        final List<List<long[]>> children = new ArrayList<>();
+        final List<Integer> anyChildren = new ArrayList<>();
+        final Map<Integer, List<Integer>> nodeRules = new HashMap<>();
+        children.add(new ArrayList<>(0));
+        anyChildren.add(-1);
+        for (final Map.Entry<Literal, List<Integer>> group : groups.entrySet()) {
+            final String anchor = group.getKey().toString();
+            int node = 0;
+            for (int i = 0; i < anchor.length(); i++) {
+                final char c = anchor.charAt(isReversed ? anchor.length() - 1 - i : i);
+                node = getChild(children, anyChildren, node, c);
+            }
+            nodeRules.computeIfAbsent(node, n -> new ArrayList<>()).addAll(group.getValue());
+        }
+
+        // Flatten the trie to arrays
+        final int size = children.size();
+        myChildStart = new int[size + 1];
+        int transitions = 0;
+        for (int node = 0; node < size; node++) {
+            myChildStart[node] = transitions;
+            transitions += children.get(node).size();
+        }
+        myChildStart[size] = transitions;
+
+        myLabels = new char[transitions];
+        myTargets = new int[transitions];
+        myAnyChild = new int[size];
+        for (int node = 0; node < size; node++) {
+            final List<long[]> nodeChildren = children.get(node);
+            nodeChildren.sort((a, b) -> Long.compare(a[0], b[0]));
+            int index = myChildStart[node];
+            for (final long[] child : nodeChildren) {
+                myLabels[index] = (char) child[0];
+                myTargets[index] = (int) child[1];
+                index++;
+            }
+            myAnyChild[node] = anyChildren.get(node);
+        }
+
+        myMasks = new long[size][];
+        myRules = new int[size][];
+        for (final Map.Entry<Integer, List<Integer>> entry : nodeRules.entrySet()) {
+            final List<Integer> rules = entry.getValue();
+            if (rules.size() >= MASK_THRESHOLD) {
+                final BitSet mask = new BitSet(orderedRules.length);
+                for (final int rule : rules) {
+                    mask.set(rule);
+                }
+                myMasks[entry.getKey()] = mask.toLongArray();
+            } else {
+                myRules[entry.getKey()] = rules.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+    }
+
+    private AnchorIndex(final int[] childStart, final char[] labels, final int[] targets, final int[] anyChild,
+            final long[][] masks, final int[][] rules, final boolean isReversed, final long[] unanchoredRules) {
+        myChildStart = childStart;
+        myLabels = labels;
+        myTargets = targets;
+        myAnyChild = anyChild;
+        myMasks = masks;
+        myRules = rules;
+        myIsReversed = isReversed;
+        myUnanchoredRules = unanchoredRules;
+    }
+
+    /**
+     * Writes the flattened trie, so it can be restored without building it again.
+     * @param out The output
+     * @throws IOException If writing failed
+     */
+    void write(final DataOutputStream out) throws IOException {
+        out.writeBoolean(myIsReversed);
+        writeInts(out, myChildStart);
+        writeChars(out, myLabels);
+        writeInts(out, myTargets);
+        writeInts(out, myAnyChild);
+        writeLongs(out, myUnanchoredRules);
+
+        // Per node whether it has a mask (1), a list of rules (2) or neither (0), followed by the mask or the list
+        for (int node = 0; node < myAnyChild.length; node++) {
+            if (myMasks[node] != null) {
+                out.writeByte(1);
+                writeLongs(out, myMasks[node]);
+            } else if (myRules[node] != null) {
+                out.writeByte(2);
+                writeInts(out, myRules[node]);
+            } else {
+                out.writeByte(0);
+            }
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #write(DataOutputStream)}.
+     * @param in The input
+     * @return The index
+     * @throws IOException If the input contains an invalid length
+     */
+    static AnchorIndex read(final ByteBuffer in) throws IOException {
+        final boolean isReversed = in.get() != 0;
+        final int[] childStart = readInts(in);
+        final char[] labels = readChars(in);
+        final int[] targets = readInts(in);
+        final int[] anyChild = readInts(in);
+        final long[] unanchoredRules = readLongs(in);
+        if (childStart.length != anyChild.length + 1) {
+            throw new IOException("Corrupt BrowsCap parser snapshot");
+        }
+
+        final long[][] masks = new long[anyChild.length][];
+        final int[][] rules = new int[anyChild.length][];
+        for (int node = 0; node < anyChild.length; node++) {
+            final byte type = in.get();
+            if (type == 1) {
+                masks[node] = readLongs(in);
+            } else if (type == 2) {
+                rules[node] = readInts(in);
+            } else if (type != 0) {
+                throw new IOException("Corrupt BrowsCap parser snapshot");
+            }
+        }
+        return new AnchorIndex(childStart, labels, targets, anyChild, masks, rules, isReversed, unanchoredRules);
+    }
+
+    /**
+     * Determines the rules which can match the useragent based on their anchor: the rules of which the prefix (or
+     * postfix) matches and the rules without one.
+     * Large groups of rules are added as a mask, which is only combined with the others per requested block.
+     * @param value The useragent
+     * @param result The set to store the rules in, which is cleared first
+     * @return The result argument
+     */
+    CandidateSet getCandidates(final SearchableString value, final CandidateSet result) {
+        result.clear();
+        result.addMask(myUnanchoredRules);
+        addCandidates(value, 0, 0, result);
+        return result;
+    }
+
+    // Add the rules of the node and of all nodes which match the next characters
+    private void addCandidates(final SearchableString value, final int node, final int depth,
+            final CandidateSet result) {
+        if (myMasks[node] != null) {
+            result.addMask(myMasks[node]);
+        } else if (myRules[node] != null) {
+            for (final int rule : myRules[node]) {
+                result.add(rule);
+            }
+        }
+
+        if (depth == value.getSize()) {
+            return;
+        }
+        final char c = value.charAt(myIsReversed ? value.getSize() - 1 - depth : depth);
+        final int child = findChild(node, c);
+        if (child != -1) {
+            addCandidates(value, child, depth + 1, result);
+        }
+        if (myAnyChild[node] != -1) {
+            addCandidates(value, myAnyChild[node], depth + 1, result);
+        }
+    }
+
+    private int findChild(final int node, final char c) {
+        int low = myChildStart[node];
+        int high = myChildStart[node + 1] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final char label = myLabels[mid];
+            if (label < c) {
+                low = mid + 1;
+            } else if (label > c) {
+                high = mid - 1;
+            } else {
+                return myTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    // Returns the child of a node in the trie under construction, creating it if needed
+    private static int getChild(final List<List<long[]>> children, final List<Integer> anyChildren, final int node,
+            final char c) {
+        if (c == '?') {
+            int child = anyChildren.get(node);
+            if (child == -1) {
+                child = addNode(children, anyChildren);
+                anyChildren.set(node, child);
+            }
+            return child;
+        }
+
+        for (final long[] child : children.get(node)) {
+            if (child[0] == c) {
+                return (int) child[1];
+            }
+        }
+        final int child = addNode(children, anyChildren);
+        children.get(node).add(new long[]{c, child});
+        return child;
+    }
+
+    private static int addNode(final List<List<long[]>> children, final List<Integer> anyChildren) {
+        children.add(new ArrayList<>(0));
+        anyChildren.add(-1);
+        return children.size() - 1;
+    }
+}
@@ -0,0 +1,42 @@
+package com.blueconic.browscap.impl;
+
+/**
+ * 128 bit signature of the bigrams of a string, as two 64 bit words. A rule can only match a useragent which contains
+ * all bigrams of its literals, so a rule of which the signature has a bit that the signature of the useragent hasn't
+ * can be rejected with a single comparison. Bigrams with a question mark of a literal are skipped, because it matches
+ * any character.
+ */
+final class BigramSignature {
+
+    private BigramSignature() {
+    }
+
+    /**
+     * Returns the bit of a bigram.
+     * @param first The first character, as a Latin-1 value
+     * @param second The second character, as a Latin-1 value
+     * @return the index of the bit, from 0 to 127
+     */
+    static int getBit(final int first, final int second) {
+        return (first * 31 + second) * 0x9e3779b1 >>> 25;
+    }
+
+    /**
+     * Returns a word of the signature of the bytes of a literal.
+     * @param bytes The bytes, in which question marks match any character
+     * @param high <code>true</code> for the word of bits 64 to 127, <code>false</code> for bits 0 to 63
+     * @return the word of the signature
+     */
+    static long getLiteralWord(final byte[] bytes, final boolean high) {
+        long result = 0;
+        for (int i = 1; i < bytes.length; i++) {
+            if (bytes[i - 1] != '?' && bytes[i] != '?') {
+                final int bit = getBit(bytes[i - 1] & 0xff, bytes[i] & 0xff);
+                if (bit >= 64 == high) {
+                    result |= 1L << bit;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,49 @@
+package com.blueconic.browscap.impl;
+
+/**
+ * The inner loops of searching and comparing literals in the bytes of a useragent. This is the plain Java 8 version, the
+ * multi-release jar contains a version for Java 17 and higher which uses the Vector API when it's available.
+ */
+final class ByteSearch {
+
+    private ByteSearch() {
+    }
+
+    /**
+     * Finds the first index of a byte in a range of a value.
+     * @param value The value
+     * @param b The byte to search for
+     * @param from The first index of the range
+     * @param to The end of the range, exclusive
+     * @return the index, or -1 if the byte doesn't occur in the range
+     */
+    static int indexOf(final byte[] value, final byte b, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (value[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the bytes of a pattern with a range of a value, in which question marks of the pattern match any byte.
+     * The bounds should already be checked.
+     * @param pattern The bytes of the pattern
+     * @param offset The index of the first byte of the pattern
+     * @param value The value
+     * @param from The index of the first byte of the range of the value
+     * @param length The number of bytes to compare
+     * @return <code>true</code> if all bytes match, <code>false</code> otherwise
+     */
+    static boolean matches(final byte[] pattern, final int offset, final byte[] value, final int from,
+            final int length) {
+        for (int i = 0; i < length; i++) {
+            final byte b = pattern[offset + i];
+            if (b != value[from + i] && b != '?') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,94 @@
+package com.blueconic.browscap.impl;
+
+import java.util.Arrays;
+
+/**
+ * Reusable set of rules, which is the union of separately added rules and of shared masks. The masks aren't copied,
+ * but combined when a range of the set is requested. This way the rules after the first matching rule don't cost
+ * anything.
+ */
+class CandidateSet {
+
+    // The separately added rules, as a bit set
+    private final long[] myWords;
+
+    // The words of the separately added rules which may be non-zero
+    private int[] myTouched = new int[16];
+    private int myTouchedSize;
+
+    // The masks of which the union is part of this set
+    private long[][] myMasks = new long[8][];
+    private int myMasksSize;
+
+    /**
+     * Creates an empty set.
+     * @param numberOfRules The number of rules
+     */
+    CandidateSet(final int numberOfRules) {
+        myWords = new long[getNumberOfWords(numberOfRules)];
+    }
+
+    /**
+     * Returns the number of 64 bit words of a set.
+     * @param numberOfRules The number of rules
+     * @return the number of words
+     */
+    static int getNumberOfWords(final int numberOfRules) {
+        return (numberOfRules + 63) >>> 6;
+    }
+
+    /**
+     * Removes all rules and masks, at a cost proportional to the number of added ones.
+     */
+    void clear() {
+        for (int i = 0; i < myTouchedSize; i++) {
+            myWords[myTouched[i]] = 0;
+        }
+        myTouchedSize = 0;
+        Arrays.fill(myMasks, 0, myMasksSize, null);
+        myMasksSize = 0;
+    }
+
+    /**
+     * Adds a single rule.
+     * @param rule The index of the rule
+     */
+    void add(final int rule) {
+        final int word = rule >>> 6;
+        if (myWords[word] == 0) {
+            if (myTouchedSize == myTouched.length) {
+                myTouched = Arrays.copyOf(myTouched, myTouchedSize * 2);
+            }
+            myTouched[myTouchedSize++] = word;
+        }
+        myWords[word] |= 1L << rule;
+    }
+
+    /**
+     * Adds all rules of a mask. The mask is shared, so it shouldn't be changed while it is part of this set.
+     * @param mask The rules as a bit set, which may be shorter than this set
+     */
+    void addMask(final long[] mask) {
+        if (myMasksSize == myMasks.length) {
+            myMasks = Arrays.copyOf(myMasks, myMasksSize * 2);
+        }
+        myMasks[myMasksSize++] = mask;
+    }
+
+    /**
+     * Copies a range of the set.
+     * @param from The index of the first word
+     * @param result The array to store the words in, from index 0
+     * @param length The number of words
+     */
+    void getWords(final int from, final long[] result, final int length) {
+        System.arraycopy(myWords, from, result, 0, length);
+        for (int i = 0; i < myMasksSize; i++) {
+            final long[] mask = myMasks[i];
+            final int end = Math.min(length, mask.length - from);
+            for (int j = 0; j < end; j++) {
+                result[j] |= mask[from + j];
+            }
+        }
+    }
+}
@@ -1,11 +1,32 @@
 package com.blueconic.browscap.impl;
 
+import static com.blueconic.browscap.BrowsCapField.BROWSER;
+import static com.blueconic.browscap.BrowsCapField.BROWSER_MAJOR_VERSION;
+import static com.blueconic.browscap.BrowsCapField.BROWSER_TYPE;
+import static com.blueconic.browscap.BrowsCapField.COMMENT;
+import static com.blueconic.browscap.BrowsCapField.DEVICE_BRAND_NAME;
+import static com.blueconic.browscap.BrowsCapField.DEVICE_CODE_NAME;
+import static com.blueconic.browscap.BrowsCapField.DEVICE_MAKER;
+import static com.blueconic.browscap.BrowsCapField.DEVICE_NAME;
+import static com.blueconic.browscap.BrowsCapField.DEVICE_TYPE;
+import static com.blueconic.browscap.BrowsCapField.PLATFORM;
+import static com.blueconic.browscap.BrowsCapField.PLATFORM_MAKER;
+import static com.blueconic.browscap.BrowsCapField.PLATFORM_VERSION;
+
+import java.util.List;
+
+import com.blueconic.browscap.BrowsCapField;
 import com.blueconic.browscap.Capabilities;
 
+/**
+ * The browser properties of the rules. A single instance is shared by all rules with equal properties, so it doesn't
+ * know the pattern of the rule which matched a useragent.
+ */
 class CapabilitiesImpl implements Capabilities {
+
     public final static Capabilities DEFAULT =
             new CapabilitiesImpl(
-                    UNKNOWN_BROWSCAP_VALUE,
+                    new ValueDictionary(),
                     UNKNOWN_BROWSCAP_VALUE,
                     UNKNOWN_BROWSCAP_VALUE,
                     UNKNOWN_BROWSCAP_VALUE,
@@ -19,21 +40,24 @@ class CapabilitiesImpl implements Capabilities {
                     UNKNOWN_BROWSCAP_VALUE,
                     UNKNOWN_BROWSCAP_VALUE);
 
-    private final String myBrowser;
-    private final String myBrowserType;
-    private final String myBrowserMajorVersion;
-    private final String myDeviceType;
-    private final String myPlatform;
-    private final String myPlatformVersion;
-    private final String myPattern;
-    private final String myComment;
-    private final String myDeviceName;
-    private final String myDeviceCodeName;
-    private final String myPlatformMaker;
-    private final String myDeviceMaker;
-    private final String myDeviceBrandName;
-
-    public CapabilitiesImpl(final String pattern,
+    // The dictionary of the values
+    private final ValueDictionary myValues;
+
+    // The codes of the values
+    private final int myBrowser;
+    private final int myBrowserType;
+    private final int myBrowserMajorVersion;
+    private final int myDeviceType;
+    private final int myPlatform;
+    private final int myPlatformVersion;
+    private final int myComment;
+    private final int myDeviceName;
+    private final int myDeviceCodeName;
+    private final int myPlatformMaker;
+    private final int myDeviceMaker;
+    private final int myDeviceBrandName;
+
+    public CapabilitiesImpl(final ValueDictionary values,
                             final String browser,
                             final String browserType,
                             final String browserMajorVersion,
@@ -46,27 +70,50 @@ class CapabilitiesImpl implements Capabilities {
                             final String platformMaker,
                             final String deviceMaker,
                             final String deviceBrandName) {
-        myPattern = pattern;
-        myBrowser = browser;
-        myBrowserType = browserType;
-        myBrowserMajorVersion = browserMajorVersion;
-        myDeviceType = deviceType;
-        myPlatform = platform;
-        myPlatformVersion = platformVersion;
-        myComment = comment;
-        myDeviceName = deviceName;
-        myDeviceCodeName = deviceCodeName;
-        myPlatformMaker = platformMaker;
-        myDeviceMaker = deviceMaker;
-        myDeviceBrandName = deviceBrandName;
+        myValues = values;
+        myBrowser = values.getCode(BROWSER, browser);
+        myBrowserType = values.getCode(BROWSER_TYPE, browserType);
+        myBrowserMajorVersion = values.getCode(BROWSER_MAJOR_VERSION, browserMajorVersion);
+        myDeviceType = values.getCode(DEVICE_TYPE, deviceType);
+        myPlatform = values.getCode(PLATFORM, platform);
+        myPlatformVersion = values.getCode(PLATFORM_VERSION, platformVersion);
+        myComment = values.getCode(COMMENT, comment);
+        myDeviceName = values.getCode(DEVICE_NAME, deviceName);
+        myDeviceCodeName = values.getCode(DEVICE_CODE_NAME, deviceCodeName);
+        myPlatformMaker = values.getCode(PLATFORM_MAKER, platformMaker);
+        myDeviceMaker = values.getCode(DEVICE_MAKER, deviceMaker);
+        myDeviceBrandName = values.getCode(DEVICE_BRAND_NAME, deviceBrandName);
     }
 
     /**
-     * {@inheritDoc}
+     * Creates new capabilities based on the codes of their values.
+     * @param values The dictionary of the values
+     * @param codes The codes of the values, by the ordinal of their field
+     */
+    CapabilitiesImpl(final ValueDictionary values, final int[] codes) {
+        myValues = values;
+        myBrowser = codes[BROWSER.ordinal()];
+        myBrowserType = codes[BROWSER_TYPE.ordinal()];
+        myBrowserMajorVersion = codes[BROWSER_MAJOR_VERSION.ordinal()];
+        myDeviceType = codes[DEVICE_TYPE.ordinal()];
+        myPlatform = codes[PLATFORM.ordinal()];
+        myPlatformVersion = codes[PLATFORM_VERSION.ordinal()];
+        myComment = codes[COMMENT.ordinal()];
+        myDeviceName = codes[DEVICE_NAME.ordinal()];
+        myDeviceCodeName = codes[DEVICE_CODE_NAME.ordinal()];
+        myPlatformMaker = codes[PLATFORM_MAKER.ordinal()];
+        myDeviceMaker = codes[DEVICE_MAKER.ordinal()];
+        myDeviceBrandName = codes[DEVICE_BRAND_NAME.ordinal()];
+    }
+
+    /**
+     * Returns {@link #UNKNOWN_BROWSCAP_VALUE}, as these capabilities are shared by all rules with equal properties.
+     * The pattern of the matching rule is returned by {@link UserAgentParserImpl#getPattern(String)}.
+     * @return {@link #UNKNOWN_BROWSCAP_VALUE}
      */
     @Override
     public String getPattern() {
-        return myPattern;
+        return UNKNOWN_BROWSCAP_VALUE;
     }
 
     /**
@@ -74,7 +121,7 @@ class CapabilitiesImpl implements Capabilities {
      */
     @Override
     public String getBrowser() {
-        return myBrowser;
+        return getValue(BROWSER);
     }
 
     /**
@@ -82,7 +129,7 @@ class CapabilitiesImpl implements Capabilities {
      */
     @Override
     public String getBrowserType() {
-        return myBrowserType;
+        return getValue(BROWSER_TYPE);
     }
 
     /**
@@ -90,7 +137,7 @@ class CapabilitiesImpl implements Capabilities {
      */
     @Override
     public String getBrowserMajorVersion() {
-        return myBrowserMajorVersion;
+        return getValue(BROWSER_MAJOR_VERSION);
     }
 
     /**
@@ -98,7 +145,7 @@ class CapabilitiesImpl implements Capabilities {
      */
     @Override
     public String getPlatform() {
-        return myPlatform;
+        return getValue(PLATFORM);
     }
 
     /**
@@ -106,7 +153,7 @@ class CapabilitiesImpl implements Capabilities {
      */
     @Override
     public String getPlatformVersion() {
-        return myPlatformVersion;
+        return getValue(PLATFORM_VERSION);
     }
 
     /**
@@ -114,57 +161,167 @@ class CapabilitiesImpl implements Capabilities {
      */
     @Override
     public String getDeviceType() {
-        return myDeviceType;
+        return getValue(DEVICE_TYPE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getComment() {
+        return getValue(COMMENT);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDeviceName() {
+        return getValue(DEVICE_NAME);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public String getComment() { return myComment; }
+    public String getDeviceCodeName() {
+        return getValue(DEVICE_CODE_NAME);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getPlatformMaker() {
+        return getValue(PLATFORM_MAKER);
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public String getDeviceName() { return myDeviceName; }
+    public String getDeviceMaker() {
+        return getValue(DEVICE_MAKER);
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public String getDeviceCodeName() { return myDeviceCodeName; }
+    public String getDeviceBrandName() {
+        return getValue(DEVICE_BRAND_NAME);
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public String getPlatformMaker() { return myPlatformMaker; }
+    public int getCode(final BrowsCapField field) {
+        switch (field) {
+            case BROWSER:
+                return myBrowser;
+            case BROWSER_TYPE:
+                return myBrowserType;
+            case BROWSER_MAJOR_VERSION:
+                return myBrowserMajorVersion;
+            case DEVICE_TYPE:
+                return myDeviceType;
+            case PLATFORM:
+                return myPlatform;
+            case PLATFORM_VERSION:
+                return myPlatformVersion;
+            case COMMENT:
+                return myComment;
+            case DEVICE_NAME:
+                return myDeviceName;
+            case DEVICE_CODE_NAME:
+                return myDeviceCodeName;
+            case PLATFORM_MAKER:
+                return myPlatformMaker;
+            case DEVICE_MAKER:
+                return myDeviceMaker;
+            case DEVICE_BRAND_NAME:
+                return myDeviceBrandName;
+            default:
+                throw new IllegalArgumentException("Unsupported field: " + field);
+        }
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public String getDeviceMaker() { return myDeviceMaker; }
+    public String getValue(final BrowsCapField field) {
+        return myValues.getValue(field, getCode(field));
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public String getDeviceBrandName() { return myDeviceBrandName; }
+    public List<String> getValues(final BrowsCapField field) {
+        return myValues.getValues(field);
+    }
+
+    /**
+     * Tests whether the browser properties are equal. Only capabilities with the same dictionary can be equal.
+     * @param obj The object to compare with
+     * @return <code>true</code> if the object has equal properties, <code>false</code> otherwise
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CapabilitiesImpl)) {
+            return false;
+        }
+        final CapabilitiesImpl other = (CapabilitiesImpl) obj;
+        return myValues == other.myValues
+                && myBrowser == other.myBrowser
+                && myBrowserType == other.myBrowserType
+                && myBrowserMajorVersion == other.myBrowserMajorVersion
+                && myDeviceType == other.myDeviceType
+                && myPlatform == other.myPlatform
+                && myPlatformVersion == other.myPlatformVersion
+                && myComment == other.myComment
+                && myDeviceName == other.myDeviceName
+                && myDeviceCodeName == other.myDeviceCodeName
+                && myPlatformMaker == other.myPlatformMaker
+                && myDeviceMaker == other.myDeviceMaker
+                && myDeviceBrandName == other.myDeviceBrandName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = myBrowser;
+        result = 31 * result + myBrowserType;
+        result = 31 * result + myBrowserMajorVersion;
+        result = 31 * result + myDeviceType;
+        result = 31 * result + myPlatform;
+        result = 31 * result + myPlatformVersion;
+        result = 31 * result + myComment;
+        result = 31 * result + myDeviceName;
+        result = 31 * result + myDeviceCodeName;
+        result = 31 * result + myPlatformMaker;
+        result = 31 * result + myDeviceMaker;
+        return 31 * result + myDeviceBrandName;
+    }
 
     @Override
     public String toString() {
-        return "Capabilities{browser='" + myBrowser
-                + "', browserType='" + myBrowserType
-                + "', browserMajorVersion='" + myBrowserMajorVersion
-                + "', deviceType='" + myDeviceType
-                + "', platform='" + myPlatform
-                + "', platformVersion='" + myPlatformVersion
-                + "', deviceName='" + myDeviceName
-                + "', deviceCodeName='" + myDeviceCodeName
-                + "', comment='" + myComment
-                + "', pattern='" + myPattern
+        return "Capabilities{browser='" + getBrowser()
+                + "', browserType='" + getBrowserType()
+                + "', browserMajorVersion='" + getBrowserMajorVersion()
+                + "', deviceType='" + getDeviceType()
+                + "', platform='" + getPlatform()
+                + "', platformVersion='" + getPlatformVersion()
+                + "', deviceName='" + getDeviceName()
+                + "', deviceCodeName='" + getDeviceCodeName()
+                + "', comment='" + getComment()
                 +'}';
     }
 }
@@ -0,0 +1,214 @@
+package com.blueconic.browscap.impl;
+
+import java.util.BitSet;
+
+/**
+ * Immutable bit set which is divided in containers of 4096 bits, which are stored depending on their contents: as a
+ * list of runs of consecutive bits, as a sorted list of bits or as plain words. Empty containers aren't stored at all.
+ * The masks of the filters are often empty or consist of a few runs of rules in large ranges, so this saves memory
+ * compared to a bit set over all rules, and removing a mask from a set of rules skips the empty ranges.
+ */
+class CompressedBitmap {
+
+    // The number of 64 bit words per container
+    static final int CONTAINER_WORDS = 64;
+    private static final int CONTAINER_BITS = CONTAINER_WORDS << 6;
+
+    // The maximum number of runs and values of a container which isn't stored as words
+    private static final int MAX_RUNS = CONTAINER_WORDS / 8;
+    private static final int MAX_VALUES = CONTAINER_WORDS / 4;
+
+    // The storage of a container: absent when it's empty, otherwise runs, values or words
+    private static final byte EMPTY = 0;
+    private static final byte RUNS = 1;
+    private static final byte VALUES = 2;
+    private static final byte WORDS = 3;
+
+    // Per container its type, the runs as pairs of first and last offset or the sorted offsets, or the plain words
+    private final byte[] myTypes;
+    private final char[][] myValues;
+    private final long[][] myWords;
+
+    /**
+     * Creates a compressed copy of a bit set.
+     * @param bits The bit set
+     */
+    CompressedBitmap(final BitSet bits) {
+        final long[] words = bits.toLongArray();
+        final int size = (words.length + CONTAINER_WORDS - 1) / CONTAINER_WORDS;
+        myTypes = new byte[size];
+        myValues = new char[size][];
+        myWords = new long[size][];
+
+        final long[] containerWords = new long[CONTAINER_WORDS];
+        for (int container = 0; container < size; container++) {
+            final int from = container * CONTAINER_WORDS;
+            final int length = Math.min(CONTAINER_WORDS, words.length - from);
+            System.arraycopy(words, from, containerWords, 0, length);
+            for (int i = length; i < CONTAINER_WORDS; i++) {
+                containerWords[i] = 0;
+            }
+            setContainer(container, containerWords);
+        }
+    }
+
+    // Choose the storage for the container, the runs and values only if removing them is as cheap as the words
+    private void setContainer(final int container, final long[] words) {
+        int cardinality = 0;
+        int runs = 0;
+        long previous = 0;
+        for (final long word : words) {
+            cardinality += Long.bitCount(word);
+
+            // A run starts at each set bit of which the preceding bit isn't set
+            runs += Long.bitCount(word & ~(word << 1 | previous >>> 63));
+            previous = word;
+        }
+
+        if (cardinality == 0) {
+            myTypes[container] = EMPTY;
+        } else if (runs <= MAX_RUNS && runs * 2 <= cardinality) {
+            myTypes[container] = RUNS;
+            myValues[container] = getRuns(words, runs);
+        } else if (cardinality <= MAX_VALUES) {
+            myTypes[container] = VALUES;
+            myValues[container] = getValues(words, cardinality);
+        } else {
+            myTypes[container] = WORDS;
+            myWords[container] = words.clone();
+        }
+    }
+
+    private static char[] getRuns(final long[] words, final int runs) {
+        final char[] result = new char[runs * 2];
+        final BitSet bits = BitSet.valueOf(words);
+        int index = 0;
+        int start = bits.nextSetBit(0);
+        while (start >= 0) {
+            final int end = bits.nextClearBit(start);
+            result[index++] = (char) start;
+            result[index++] = (char) (end - 1);
+            start = bits.nextSetBit(end);
+        }
+        return result;
+    }
+
+    private static char[] getValues(final long[] words, final int cardinality) {
+        final char[] result = new char[cardinality];
+        final BitSet bits = BitSet.valueOf(words);
+        int index = 0;
+        for (int value = bits.nextSetBit(0); value >= 0; value = bits.nextSetBit(value + 1)) {
+            result[index++] = (char) value;
+        }
+        return result;
+    }
+
+    /**
+     * Removes the bits of this bit set from a range of another bit set, in place.
+     * @param words The words of the other bit set, of which the range starts at index 0
+     * @param from The index of the first word of the range, which should be a multiple of {@link #CONTAINER_WORDS}
+     * @param length The number of words of the range
+     * @return whether this bit set has bits in the range, so the other one may have changed
+     */
+    boolean removeFrom(final long[] words, final int from, final int length) {
+        boolean result = false;
+        final int first = from / CONTAINER_WORDS;
+        final int last = Math.min(myTypes.length, (from + length + CONTAINER_WORDS - 1) / CONTAINER_WORDS);
+        for (int container = first; container < last; container++) {
+            if (myTypes[container] == EMPTY) {
+                continue;
+            }
+            result = true;
+
+            final int offset = container * CONTAINER_WORDS - from;
+            final int end = Math.min(CONTAINER_WORDS, length - offset);
+            switch (myTypes[container]) {
+                case RUNS:
+                    removeRuns(myValues[container], words, offset, end);
+                    break;
+                case VALUES:
+                    removeValues(myValues[container], words, offset, end);
+                    break;
+                case WORDS:
+                    final long[] containerWords = myWords[container];
+                    for (int i = 0; i < end; i++) {
+                        words[offset + i] &= ~containerWords[i];
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return result;
+    }
+
+    // Clear the runs, of which the first and last words are partially cleared and the others completely
+    private static void removeRuns(final char[] runs, final long[] words, final int offset, final int end) {
+        for (int i = 0; i < runs.length; i += 2) {
+            final int start = runs[i];
+            final int stop = runs[i + 1];
+            final int firstWord = start >>> 6;
+            if (firstWord >= end) {
+                return;
+            }
+            final int lastWord = stop >>> 6;
+            final long lastMask = -1L >>> (63 - (stop & 63));
+            if (firstWord == lastWord) {
+                words[offset + firstWord] &= ~((-1L << start) & lastMask);
+                continue;
+            }
+
+            words[offset + firstWord] &= ~(-1L << start);
+            final int fullEnd = Math.min(lastWord, end);
+            for (int w = firstWord + 1; w < fullEnd; w++) {
+                words[offset + w] = 0;
+            }
+            if (lastWord < end) {
+                words[offset + lastWord] &= ~lastMask;
+            }
+        }
+    }
+
+    private static void removeValues(final char[] values, final long[] words, final int offset, final int end) {
+        for (final char value : values) {
+            final int word = value >>> 6;
+            if (word >= end) {
+                return;
+            }
+            words[offset + word] &= ~(1L << value);
+        }
+    }
+
+    /**
+     * Returns an uncompressed copy.
+     * @return the bit set
+     */
+    BitSet toBitSet() {
+        final BitSet result = new BitSet();
+        for (int container = 0; container < myTypes.length; container++) {
+            final int base = container * CONTAINER_BITS;
+            switch (myTypes[container]) {
+                case RUNS:
+                    final char[] runs = myValues[container];
+                    for (int i = 0; i < runs.length; i += 2) {
+                        result.set(base + runs[i], base + runs[i + 1] + 1);
+                    }
+                    break;
+                case VALUES:
+                    for (final char value : myValues[container]) {
+                        result.set(base + value);
+                    }
+                    break;
+                case WORDS:
+                    final BitSet bits = BitSet.valueOf(myWords[container]);
+                    for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                        result.set(base + i);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return result;
+    }
+}
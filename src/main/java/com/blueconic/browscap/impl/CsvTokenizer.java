@@ -0,0 +1,200 @@
+package com.blueconic.browscap.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming CSV tokenizer which reads UTF-8 bytes and only creates Strings for a projected set of columns. The other
+ * fields are skipped without allocating. Fields can be quoted with double quotes, in which case a double quote is
+ * escaped by doubling it.
+ */
+class CsvTokenizer {
+
+    private static final int EOF = -1;
+
+    private final InputStream myInput;
+    private final boolean[] myProjection;
+
+    private byte[] myBuffer;
+    private int myPosition;
+    private int myLimit;
+
+    // The start of the projected field which is being read, which is retained when refilling the buffer
+    private int myFieldStart = -1;
+    // Index for writing the unescaped value of the projected field, which never passes the read position
+    private int myWrite;
+
+    /**
+     * Creates a new tokenizer.
+     * @param input The UTF-8 encoded input
+     * @param columns The indices of the columns which should be read
+     */
+    CsvTokenizer(final InputStream input, final int[] columns) {
+        this(input, 1 << 16, columns);
+    }
+
+    /**
+     * Creates a new tokenizer.
+     * @param input The UTF-8 encoded input
+     * @param bufferSize The initial size of the read buffer
+     * @param columns The indices of the columns which should be read
+     */
+    CsvTokenizer(final InputStream input, final int bufferSize, final int[] columns) {
+        myInput = input;
+        myBuffer = new byte[bufferSize];
+
+        int max = 0;
+        for (final int column : columns) {
+            max = Math.max(max, column + 1);
+        }
+        myProjection = new boolean[max];
+        for (final int column : columns) {
+            myProjection[column] = true;
+        }
+    }
+
+    /**
+     * Reads the next record. The values of the projected columns are stored at their column index in the values
+     * argument, all other elements of the array are left untouched.
+     * @param values The array for the values, at least as large as the highest projected column index
+     * @return the number of fields in the record, or -1 if the end of the input has been reached
+     * @throws IOException If reading the input failed
+     */
+    int next(final String[] values) throws IOException {
+        if (myPosition >= myLimit && !fill()) {
+            return -1;
+        }
+
+        int column = 0;
+        int terminator;
+        do {
+            if (column < myProjection.length && myProjection[column]) {
+                terminator = readField(values, column);
+            } else {
+                terminator = skipField();
+            }
+            column++;
+        } while (terminator == ',');
+
+        // Clear projected values which are missing in this record
+        for (int i = column; i < myProjection.length; i++) {
+            if (myProjection[i]) {
+                values[i] = null;
+            }
+        }
+        return column;
+    }
+
+    // Read a field and store its value, returns the terminating character
+    private int readField(final String[] values, final int column) throws IOException {
+        int b = read();
+        if (b == '"') {
+            startField(myPosition);
+            while (true) {
+                b = read();
+                if (b == EOF) {
+                    break;
+                }
+                if (b == '"') {
+                    b = read();
+                    if (b != '"') {
+                        // End of the quoted part
+                        break;
+                    }
+                }
+                append(b);
+            }
+        } else {
+            startField(myPosition - 1);
+        }
+
+        // Keep all characters up to the separator, just like unquoted values
+        while (!isTerminator(b)) {
+            append(b);
+            b = read();
+        }
+
+        values[column] = new String(myBuffer, myFieldStart, myWrite - myFieldStart, UTF_8);
+        myFieldStart = -1;
+        return endField(b);
+    }
+
+    // Skip a field, returns the terminating character
+    private int skipField() throws IOException {
+        int b = read();
+        if (b == '"') {
+            while (true) {
+                b = read();
+                if (b == EOF) {
+                    break;
+                }
+                if (b == '"') {
+                    b = read();
+                    if (b != '"') {
+                        break;
+                    }
+                }
+            }
+        }
+        while (!isTerminator(b)) {
+            b = read();
+        }
+        return endField(b);
+    }
+
+    private static boolean isTerminator(final int b) {
+        return b == ',' || b == '\n' || b == '\r' || b == EOF;
+    }
+
+    // Consume the line feed of a CRLF line ending
+    private int endField(final int terminator) throws IOException {
+        if (terminator == '\r') {
+            if (read() != '\n') {
+                myPosition--;
+            }
+            return '\n';
+        }
+        return terminator;
+    }
+
+    private void startField(final int start) {
+        myFieldStart = start;
+        myWrite = start;
+    }
+
+    private void append(final int b) {
+        myBuffer[myWrite++] = (byte) b;
+    }
+
+    private int read() throws IOException {
+        if (myPosition >= myLimit && !fill()) {
+            // Make sure an unread of the end of the input is harmless
+            myPosition = myLimit + 1;
+            return EOF;
+        }
+        return myBuffer[myPosition++] & 0xFF;
+    }
+
+    // Refill the buffer, keeping the value of the projected field which is being read
+    private boolean fill() throws IOException {
+        int keep = 0;
+        if (myFieldStart >= 0) {
+            keep = myWrite - myFieldStart;
+            System.arraycopy(myBuffer, myFieldStart, myBuffer, 0, keep);
+            myFieldStart = 0;
+            myWrite = keep;
+            if (keep == myBuffer.length) {
+                final byte[] buffer = new byte[myBuffer.length * 2];
+                System.arraycopy(myBuffer, 0, buffer, 0, keep);
+                myBuffer = buffer;
+            }
+        }
+
+        final int read = myInput.read(myBuffer, keep, myBuffer.length - keep);
+        myPosition = keep;
+        myLimit = keep + Math.max(read, 0);
+        return read > 0;
+    }
+}
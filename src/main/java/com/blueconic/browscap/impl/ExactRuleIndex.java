@@ -0,0 +1,155 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.impl.ParserSnapshot.readInts;
+import static com.blueconic.browscap.impl.ParserSnapshot.readLongs;
+import static com.blueconic.browscap.impl.ParserSnapshot.writeInts;
+import static com.blueconic.browscap.impl.ParserSnapshot.writeLongs;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * Hash index of the rules without wildcards and question marks, which only match a useragent which is equal to their
+ * pattern. A useragent is looked up in constant time instead of checking these rules one by one.
+ */
+class ExactRuleIndex {
+
+    // Open addressing table of rule index + 1, 0 for an empty slot
+    private final int[] myTable;
+    private final int myMask;
+
+    // The patterns of the indexed rules, by slot
+    private final Literal[] myLiterals;
+
+    // The indexed rules as the words of a bit set, rules with the same pattern as an earlier rule aren't indexed,
+    // because they can never be the first match
+    private final long[] myWords;
+
+    /**
+     * Creates the index for the rules.
+     * @param orderedRules The rules, ordered by priority
+     */
+    ExactRuleIndex(final Rule[] orderedRules) {
+        int count = 0;
+        for (final Rule rule : orderedRules) {
+            if (isExact(rule)) {
+                count++;
+            }
+        }
+
+        // Keep the load factor below 0.5
+        final int size = Integer.highestOneBit(Math.max(count, 1)) << 2;
+        myTable = new int[size];
+        myMask = size - 1;
+        myLiterals = new Literal[size];
+
+        final BitSet rules = new BitSet();
+        for (int i = 0; i < orderedRules.length; i++) {
+            final Rule rule = orderedRules[i];
+            if (isExact(rule) && add(rule.getPrefix(), i)) {
+                rules.set(i);
+            }
+        }
+        myWords = rules.toLongArray();
+    }
+
+    private ExactRuleIndex(final int[] table, final Literal[] literals, final long[] words) {
+        myTable = table;
+        myMask = table.length - 1;
+        myLiterals = literals;
+        myWords = words;
+    }
+
+    /**
+     * Writes the index, so it can be restored without building it again.
+     * @param out The output
+     * @throws IOException If writing failed
+     */
+    void write(final DataOutputStream out) throws IOException {
+        final int[] literals = new int[myLiterals.length];
+        for (int i = 0; i < literals.length; i++) {
+            literals[i] = myLiterals[i] == null ? -1 : myLiterals[i].getIndex();
+        }
+        writeInts(out, myTable);
+        writeInts(out, literals);
+        writeLongs(out, myWords);
+    }
+
+    /**
+     * Reads an index written by {@link #write(DataOutputStream)}.
+     * @param in The input
+     * @param literals The literals of the rule set, ordered by index
+     * @return The index
+     * @throws IOException If the input contains an invalid length
+     */
+    static ExactRuleIndex read(final ByteBuffer in, final Literal[] literals) throws IOException {
+        final int[] table = readInts(in);
+        final int[] literalIndices = readInts(in);
+        if (Integer.bitCount(table.length) != 1 || literalIndices.length != table.length) {
+            throw new IOException("Corrupt BrowsCap parser snapshot");
+        }
+        final Literal[] slotLiterals = new Literal[table.length];
+        for (int i = 0; i < slotLiterals.length; i++) {
+            slotLiterals[i] = literalIndices[i] < 0 ? null : literals[literalIndices[i]];
+        }
+        return new ExactRuleIndex(table, slotLiterals, readLongs(in));
+    }
+
+    /**
+     * Removes the indexed rules from a block of rules.
+     * @param block The rules as the words of a bit set
+     * @param from The index of the first word of the block
+     * @param length The number of words
+     */
+    void excludeRules(final long[] block, final int from, final int length) {
+        final int end = Math.min(length, myWords.length - from);
+        for (int i = 0; i < end; i++) {
+            block[i] &= ~myWords[from + i];
+        }
+    }
+
+    /**
+     * Finds the first rule of which the pattern is equal to the useragent.
+     * @param value The useragent
+     * @return the index of the rule, or -1 if there is none
+     */
+    int find(final SearchableString value) {
+        int hash = 0;
+        for (int i = 0; i < value.getSize(); i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+
+        for (int slot = spread(hash) & myMask; myTable[slot] != 0; slot = (slot + 1) & myMask) {
+            final Literal literal = myLiterals[slot];
+            if (literal.getLength() == value.getSize() && value.startsWith(literal)) {
+                return myTable[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    // Add a rule, unless there already is one with the same pattern
+    private boolean add(final Literal literal, final int index) {
+        for (int slot = spread(literal.toString().hashCode()) & myMask;; slot = (slot + 1) & myMask) {
+            if (myTable[slot] == 0) {
+                myTable[slot] = index + 1;
+                myLiterals[slot] = literal;
+                return true;
+            }
+            if (myLiterals[slot] == literal) {
+                return false;
+            }
+        }
+    }
+
+    private static boolean isExact(final Rule rule) {
+        return rule.getPrefix() != null && rule.getSuffixes() == null && rule.getPostfix() == null
+                && rule.getPrefix().toString().indexOf('?') < 0;
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
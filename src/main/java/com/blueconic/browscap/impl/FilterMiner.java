@@ -0,0 +1,170 @@
+package com.blueconic.browscap.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.blueconic.browscap.impl.UserAgentParserImpl.Filter;
+
+/**
+ * Chooses the contains filters for a rule set, based on the literals of the rules. A literal is a good filter if many
+ * rules require it while many rules don't, because then it excludes many rules for many useragents. The prefixes and
+ * postfixes are already handled by the anchor indices, so only the literals between the wildcards are taken into
+ * account. Literals which exclude nearly the same rules as a better one are skipped.
+ */
+class FilterMiner {
+
+    // The maximum number of filters
+    static final int MAX_FILTERS = 64;
+
+    // The number of best scoring literals which are considered
+    private static final int MAX_CANDIDATES = 512;
+
+    // Literals which share this fraction of their rules with a chosen filter are skipped
+    private static final double MAX_OVERLAP = 0.9;
+
+    private final Rule[] myRules;
+    private final Literal[] myLiterals;
+
+    // Per literal: the literals which occur in it
+    private final int[][] myContained;
+
+    /**
+     * Creates a miner for the rules.
+     * @param orderedRules The rules, ordered by priority
+     * @param literals The literals of the rules, ordered by index
+     * @param automaton The automaton for finding the literals
+     */
+    FilterMiner(final Rule[] orderedRules, final Literal[] literals, final LiteralAutomaton automaton) {
+        myRules = orderedRules;
+        myLiterals = literals;
+
+        // Find the literals which occur in each literal, so a rule requiring the latter also requires the former
+        myContained = new int[literals.length][];
+        IntStream.range(0, literals.length).parallel().forEach(i -> {
+            final byte[] bytes = literals[i].getBytes();
+            final BitSet found = new BitSet();
+            automaton.scan(bytes, bytes.length, (literal, index) -> found.set(literal.getIndex()));
+            myContained[i] = found.stream().toArray();
+        });
+    }
+
+    /**
+     * Chooses the filters, ordered by the number of rules they can exclude.
+     * @param maxFilters The maximum number of filters
+     * @return The filters
+     */
+    Filter[] mine(final int maxFilters) {
+        final int[] candidates = getCandidates();
+        final long[][] masks = getMasks(candidates);
+
+        // Choose the best scoring candidates which don't overlap with the ones already chosen
+        final List<Integer> chosen = new ArrayList<>();
+        final long[] cardinalities = new long[candidates.length];
+        for (int i = 0; i < candidates.length && chosen.size() < maxFilters; i++) {
+            cardinalities[i] = cardinality(masks[i]);
+            if (cardinalities[i] > 0 && !overlaps(masks, cardinalities, chosen, i)) {
+                chosen.add(i);
+            }
+        }
+
+        // Apply the filters which exclude the most rules first
+        chosen.sort(Comparator.comparingLong(i -> -cardinalities[i]));
+        final Filter[] result = new Filter[chosen.size()];
+        for (int i = 0; i < result.length; i++) {
+            final int candidate = chosen.get(i);
+            result[i] = new Filter(myLiterals[candidates[candidate]], false, BitSet.valueOf(masks[candidate]));
+        }
+        return result;
+    }
+
+    // Returns the best scoring literals
+    private int[] getCandidates() {
+
+        // Count the rules requiring each literal in one of their suffixes
+        final int[] counts = new int[myLiterals.length];
+        final int[] lastRules = new int[myLiterals.length];
+        Arrays.fill(lastRules, -1);
+        for (int i = 0; i < myRules.length; i++) {
+            final Literal[] suffixes = myRules[i].getSuffixes();
+            if (suffixes == null) {
+                continue;
+            }
+            for (final Literal suffix : suffixes) {
+                for (final int literal : myContained[suffix.getIndex()]) {
+                    if (lastRules[literal] != i) {
+                        lastRules[literal] = i;
+                        counts[literal]++;
+                    }
+                }
+            }
+        }
+
+        // The expected number of excluded rules, if the useragents are distributed like the rules
+        final double[] scores = new double[myLiterals.length];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = (double) counts[i] * (myRules.length - counts[i]) / myRules.length;
+        }
+        return IntStream.range(0, myLiterals.length)
+                .filter(i -> counts[i] > 0)
+                .boxed()
+                .sorted(Comparator.comparingDouble(i -> -scores[i]))
+                .limit(MAX_CANDIDATES)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    // Determine the masks of the candidates, in parallel over ranges of 64 rules
+    private long[][] getMasks(final int[] candidates) {
+        final int[] positions = new int[myLiterals.length];
+        Arrays.fill(positions, -1);
+        for (int i = 0; i < candidates.length; i++) {
+            positions[candidates[i]] = i;
+        }
+
+        final int numberOfWords = (myRules.length + 63) >>> 6;
+        final long[][] masks = new long[candidates.length][numberOfWords];
+        IntStream.range(0, numberOfWords).parallel().forEach(w -> {
+            for (int i = w << 6; i < Math.min(myRules.length, (w + 1) << 6); i++) {
+                final Literal[] suffixes = myRules[i].getSuffixes();
+                if (suffixes == null) {
+                    continue;
+                }
+                for (final Literal suffix : suffixes) {
+                    for (final int literal : myContained[suffix.getIndex()]) {
+                        if (positions[literal] >= 0) {
+                            masks[positions[literal]][w] |= 1L << i;
+                        }
+                    }
+                }
+            }
+        });
+        return masks;
+    }
+
+    // Whether the candidate excludes nearly the same rules as one of the chosen filters
+    private static boolean overlaps(final long[][] masks, final long[] cardinalities, final List<Integer> chosen,
+            final int candidate) {
+        for (final int other : chosen) {
+            long intersection = 0;
+            for (int w = 0; w < masks[candidate].length; w++) {
+                intersection += Long.bitCount(masks[candidate][w] & masks[other][w]);
+            }
+            if (intersection > MAX_OVERLAP * Math.max(cardinalities[candidate], cardinalities[other])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long cardinality(final long[] mask) {
+        long result = 0;
+        for (final long word : mask) {
+            result += Long.bitCount(word);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.impl.ParserSnapshot.readInts;
+import static com.blueconic.browscap.impl.ParserSnapshot.writeInts;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Index of the minimum length of the useragents the rules can match. The rules are ordered by the length of their
+ * pattern, so for a short useragent the rules at the start are too long to match. The index determines the first word
+ * of 64 rules of which any rule fits, so all words before it are skipped at once.
+ */
+class LengthIndex {
+
+    // Per word of 64 rules: the smallest minimum length of its rules and of the rules before it
+    private final int[] myMinLengths;
+
+    /**
+     * Creates the index for the rules.
+     * @param orderedRules The rules, ordered by priority
+     */
+    LengthIndex(final Rule[] orderedRules) {
+        myMinLengths = new int[CandidateSet.getNumberOfWords(orderedRules.length)];
+        int minLength = Integer.MAX_VALUE;
+        for (int i = 0; i < orderedRules.length; i++) {
+            minLength = Math.min(minLength, orderedRules[i].getMinLength());
+            myMinLengths[i >>> 6] = minLength;
+        }
+    }
+
+    private LengthIndex(final int[] minLengths) {
+        myMinLengths = minLengths;
+    }
+
+    /**
+     * Writes the index, so it can be restored without building it again.
+     * @param out The output
+     * @throws IOException If writing failed
+     */
+    void write(final DataOutputStream out) throws IOException {
+        writeInts(out, myMinLengths);
+    }
+
+    /**
+     * Reads an index written by {@link #write(DataOutputStream)}.
+     * @param in The input
+     * @return The index
+     * @throws IOException If the input contains an invalid length
+     */
+    static LengthIndex read(final ByteBuffer in) throws IOException {
+        return new LengthIndex(readInts(in));
+    }
+
+    /**
+     * Determines the first word of 64 rules which has a rule that can match a useragent of the specified length.
+     * @param length The length of the useragent
+     * @return the index of the word, or the number of words if no rule fits
+     */
+    int getFirstWord(final int length) {
+
+        // The minimum lengths are non-increasing
+        int low = 0;
+        int high = myMinLengths.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (myMinLengths[mid] <= length) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
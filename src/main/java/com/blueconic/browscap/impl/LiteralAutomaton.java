@@ -0,0 +1,374 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.impl.ParserSnapshot.readChars;
+import static com.blueconic.browscap.impl.ParserSnapshot.readInts;
+import static com.blueconic.browscap.impl.ParserSnapshot.writeChars;
+import static com.blueconic.browscap.impl.ParserSnapshot.writeInts;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over a set of literals. A single scan over a useragent finds all occurrences of all literals,
+ * so the occurrence table of a {@link SearchableString} can be filled at once instead of searching for every literal
+ * separately. It works on the bytes of the useragent, so the wide literals aren't covered.
+ */
+class LiteralAutomaton {
+
+    // Size of the directly indexed transition table of the root node
+    private static final int ROOT_TABLE_SIZE = 256;
+
+    // The literals which can be found by this automaton
+    private final BitSet myCovered = new BitSet();
+
+    // Transitions of all nodes, ordered by node and label
+    private final int[] myChildStart;
+    private final char[] myLabels;
+    private final int[] myTargets;
+
+    // Direct lookup table for the transitions of the root node
+    private final int[] myRootTable;
+
+    // Failure links
+    private final int[] myFail;
+
+    // The next node (following failure links) which has any outputs, or -1 if none
+    private final int[] myOutputLink;
+
+    // Outputs of all nodes, referring to entries in the arrays below
+    private final int[] myOutputStart;
+    private final int[] myOutputs;
+
+    // Per output entry: the literal, the offset of the key in the literal and the length of the key
+    private final Literal[] myEntryLiterals;
+    private final int[] myEntryOffsets;
+    private final int[] myEntryLengths;
+
+    /**
+     * Creates an automaton which can find all of the specified literals.
+     * @param literals The literals, without duplicates
+     */
+    LiteralAutomaton(final Collection<Literal> literals) {
+
+        final Builder builder = new Builder();
+        final List<Literal> entryLiterals = new ArrayList<>();
+        final List<int[]> entryKeys = new ArrayList<>();
+
+        for (final Literal literal : literals) {
+
+            // Use the longest part without question marks as the key, other characters are verified when found
+            final int[] key = getKey(literal);
+            if (key == null || literal.isWide()) {
+                continue;
+            }
+            final int node = builder.add(literal.toString(), key[0], key[1]);
+            builder.addOutput(node, entryLiterals.size());
+            entryLiterals.add(literal);
+            entryKeys.add(key);
+            myCovered.set(literal.getIndex());
+        }
+
+        myEntryLiterals = entryLiterals.toArray(new Literal[0]);
+        myEntryOffsets = new int[myEntryLiterals.length];
+        myEntryLengths = new int[myEntryLiterals.length];
+        for (int i = 0; i < myEntryLiterals.length; i++) {
+            final int[] key = entryKeys.get(i);
+            myEntryOffsets[i] = key[0];
+            myEntryLengths[i] = key[1] - key[0];
+        }
+
+        // Flatten the trie to arrays
+        final int size = builder.getSize();
+        myChildStart = new int[size + 1];
+        int transitions = 0;
+        for (int node = 0; node < size; node++) {
+            myChildStart[node] = transitions;
+            transitions += builder.getChildren(node).size();
+        }
+        myChildStart[size] = transitions;
+
+        myLabels = new char[transitions];
+        myTargets = new int[transitions];
+        for (int node = 0; node < size; node++) {
+            final List<long[]> children = builder.getChildren(node);
+            children.sort((a, b) -> Long.compare(a[0], b[0]));
+            int index = myChildStart[node];
+            for (final long[] child : children) {
+                myLabels[index] = (char) child[0];
+                myTargets[index] = (int) child[1];
+                index++;
+            }
+        }
+
+        myRootTable = new int[ROOT_TABLE_SIZE];
+        for (int c = 0; c < ROOT_TABLE_SIZE; c++) {
+            myRootTable[c] = findChild(0, (char) c);
+        }
+
+        myOutputStart = new int[size + 1];
+        final List<Integer> outputs = new ArrayList<>();
+        for (int node = 0; node < size; node++) {
+            myOutputStart[node] = outputs.size();
+            outputs.addAll(builder.getOutputs(node));
+        }
+        myOutputStart[size] = outputs.size();
+        myOutputs = new int[outputs.size()];
+        for (int i = 0; i < myOutputs.length; i++) {
+            myOutputs[i] = outputs.get(i);
+        }
+
+        // Compute the failure and output links in breadth first order
+        myFail = new int[size];
+        myOutputLink = new int[size];
+        myOutputLink[0] = -1;
+        final int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        while (head < tail) {
+            final int node = queue[head++];
+            for (int i = myChildStart[node]; i < myChildStart[node + 1]; i++) {
+                final int child = myTargets[i];
+                final char label = myLabels[i];
+
+                int fail = 0;
+                if (node != 0) {
+                    fail = next(myFail[node], label);
+                }
+                myFail[child] = fail;
+                myOutputLink[child] = hasOutputs(fail) ? fail : myOutputLink[fail];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    // Creates an automaton from its flattened arrays
+    private LiteralAutomaton(final Literal[] entryLiterals, final int[] entryOffsets, final int[] entryLengths,
+            final int[] childStart, final char[] labels, final int[] targets, final int[] fail,
+            final int[] outputLink, final int[] outputStart, final int[] outputs) {
+        myEntryLiterals = entryLiterals;
+        myEntryOffsets = entryOffsets;
+        myEntryLengths = entryLengths;
+        myChildStart = childStart;
+        myLabels = labels;
+        myTargets = targets;
+        myFail = fail;
+        myOutputLink = outputLink;
+        myOutputStart = outputStart;
+        myOutputs = outputs;
+
+        for (final Literal literal : entryLiterals) {
+            myCovered.set(literal.getIndex());
+        }
+        myRootTable = new int[ROOT_TABLE_SIZE];
+        for (int c = 0; c < ROOT_TABLE_SIZE; c++) {
+            myRootTable[c] = findChild(0, (char) c);
+        }
+    }
+
+    /**
+     * Writes the flattened automaton, so it can be restored without building it again.
+     * @param out The output
+     * @throws IOException If writing failed
+     */
+    void write(final DataOutputStream out) throws IOException {
+        final int[] entryLiterals = new int[myEntryLiterals.length];
+        for (int i = 0; i < entryLiterals.length; i++) {
+            entryLiterals[i] = myEntryLiterals[i].getIndex();
+        }
+        writeInts(out, entryLiterals);
+        writeInts(out, myEntryOffsets);
+        writeInts(out, myEntryLengths);
+        writeInts(out, myChildStart);
+        writeChars(out, myLabels);
+        writeInts(out, myTargets);
+        writeInts(out, myFail);
+        writeInts(out, myOutputLink);
+        writeInts(out, myOutputStart);
+        writeInts(out, myOutputs);
+    }
+
+    /**
+     * Reads an automaton written by {@link #write(DataOutputStream)}.
+     * @param in The input
+     * @param literals The literals of the rule set, ordered by index
+     * @return The automaton
+     * @throws IOException If the input contains an invalid length
+     */
+    static LiteralAutomaton read(final ByteBuffer in, final Literal[] literals) throws IOException {
+        final int[] entryLiteralIndices = readInts(in);
+        final Literal[] entryLiterals = new Literal[entryLiteralIndices.length];
+        for (int i = 0; i < entryLiterals.length; i++) {
+            entryLiterals[i] = literals[entryLiteralIndices[i]];
+        }
+        return new LiteralAutomaton(entryLiterals, readInts(in), readInts(in), readInts(in), readChars(in),
+                readInts(in), readInts(in), readInts(in), readInts(in), readInts(in));
+    }
+
+    /**
+     * Indicates whether all occurrences of the literal are reported by this automaton.
+     * @param literal The literal
+     * @return <code>true</code> if the literal is covered, <code>false</code> otherwise
+     */
+    boolean covers(final Literal literal) {
+        return myCovered.get(literal.getIndex());
+    }
+
+    /**
+     * Finds all occurrences of all covered literals in the specified bytes.
+     * @param bytes The bytes to search, see {@link Literal#toByte(char)}
+     * @param size The number of valid bytes
+     * @param occurrences The receiver of the found occurrences
+     */
+    void scan(final byte[] bytes, final int size, final Occurrences occurrences) {
+        int state = 0;
+        for (int i = 0; i < size; i++) {
+            state = next(state, (char) (bytes[i] & 0xff));
+
+            final int first = hasOutputs(state) ? state : myOutputLink[state];
+            for (int node = first; node != -1; node = myOutputLink[node]) {
+                for (int o = myOutputStart[node]; o < myOutputStart[node + 1]; o++) {
+                    final int entry = myOutputs[o];
+                    final Literal literal = myEntryLiterals[entry];
+                    final int from = i + 1 - myEntryLengths[entry] - myEntryOffsets[entry];
+                    if (myEntryLengths[entry] == literal.getLength() || literal.matches(bytes, size, from)) {
+                        occurrences.add(literal, from);
+                    }
+                }
+            }
+        }
+    }
+
+    private int next(final int node, final char c) {
+        int current = node;
+        while (true) {
+            final int child = current == 0 && c < ROOT_TABLE_SIZE ? myRootTable[c] : findChild(current, c);
+            if (child != -1) {
+                return child;
+            }
+            if (current == 0) {
+                return 0;
+            }
+            current = myFail[current];
+        }
+    }
+
+    private int findChild(final int node, final char c) {
+        int low = myChildStart[node];
+        int high = myChildStart[node + 1] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final char label = myLabels[mid];
+            if (label < c) {
+                low = mid + 1;
+            } else if (label > c) {
+                high = mid - 1;
+            } else {
+                return myTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    private boolean hasOutputs(final int node) {
+        return myOutputStart[node] != myOutputStart[node + 1];
+    }
+
+    /**
+     * Returns the start (inclusive) and end (exclusive) of the longest part without question marks.
+     * @param literal The literal
+     * @return the bounds of the key, or <code>null</code> if the literal only consists of question marks
+     */
+    static int[] getKey(final Literal literal) {
+        final String value = literal.toString();
+        int bestStart = 0;
+        int bestEnd = 0;
+        int start = 0;
+        for (int i = 0; i <= value.length(); i++) {
+            if (i == value.length() || value.charAt(i) == '?') {
+                if (i - start > bestEnd - bestStart) {
+                    bestStart = start;
+                    bestEnd = i;
+                }
+                start = i + 1;
+            }
+        }
+        if (bestEnd == bestStart) {
+            return null;
+        }
+        return new int[]{bestStart, bestEnd};
+    }
+
+    /**
+     * Receiver of the occurrences found by a scan.
+     */
+    interface Occurrences {
+
+        /**
+         * Adds an occurrence. Occurrences of the same literal are reported in ascending order.
+         * @param literal The found literal
+         * @param index The start index of the occurrence
+         */
+        void add(Literal literal, int index);
+    }
+
+    /** Mutable trie used while building the automaton. */
+    private static class Builder {
+
+        // Per node: the children as {label, target} pairs and the output entries
+        private final List<List<long[]>> myChildren = new ArrayList<>();
+        private final List<List<Integer>> myOutputs = new ArrayList<>();
+
+        Builder() {
+            addNode();
+        }
+
+        int add(final String value, final int from, final int to) {
+            int node = 0;
+            for (int i = from; i < to; i++) {
+                final char c = value.charAt(i);
+                int next = -1;
+                for (final long[] child : myChildren.get(node)) {
+                    if (child[0] == c) {
+                        next = (int) child[1];
+                        break;
+                    }
+                }
+                if (next == -1) {
+                    next = addNode();
+                    myChildren.get(node).add(new long[]{c, next});
+                }
+                node = next;
+            }
+            return node;
+        }
+
+        void addOutput(final int node, final int entry) {
+            myOutputs.get(node).add(entry);
+        }
+
+        int getSize() {
+            return myChildren.size();
+        }
+
+        List<long[]> getChildren(final int node) {
+            return myChildren.get(node);
+        }
+
+        List<Integer> getOutputs(final int node) {
+            return myOutputs.get(node);
+        }
+
+        private int addNode() {
+            myChildren.add(new ArrayList<>(0));
+            myOutputs.add(new ArrayList<>(0));
+            return myChildren.size() - 1;
+        }
+    }
+
+}
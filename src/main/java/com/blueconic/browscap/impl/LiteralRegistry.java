@@ -0,0 +1,82 @@
+package com.blueconic.browscap.impl;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of the unique literals of a single rule set. Each literal gets an index which is unique within the
+ * registry, so the caches of a {@link SearchableString} only have to be as large as the current rule set requires.
+ * The registry is thread safe, so rules can be created in parallel. Once the rules are complete, the bytes of the
+ * literals can be compacted into a single shared array.
+ */
+class LiteralRegistry {
+
+    // Mapping substrings to unique literal for caching of lookups
+    private final ConcurrentMap<String, Literal> myLiterals = new ConcurrentHashMap<>();
+
+    // The next free index
+    private final AtomicInteger myNextIndex = new AtomicInteger();
+
+    // The number of literals which have been compacted, by index
+    private int myCompactedSize;
+
+    /**
+     * Returns the unique literal for the specified value, creating it if needed.
+     * @param value The String value
+     * @return The literal
+     */
+    Literal getLiteral(final String value) {
+        return myLiterals.computeIfAbsent(value, v -> new Literal(v, myNextIndex.getAndIncrement()));
+    }
+
+    /**
+     * Returns all registered literals.
+     * @return all registered literals
+     */
+    Collection<Literal> getLiterals() {
+        return myLiterals.values();
+    }
+
+    /**
+     * Returns all registered literals, ordered by their index.
+     * @return all registered literals, ordered by their index
+     */
+    Literal[] getLiteralsByIndex() {
+        final Literal[] result = new Literal[size()];
+        for (final Literal literal : myLiterals.values()) {
+            result[literal.getIndex()] = literal;
+        }
+        return result;
+    }
+
+    /**
+     * Moves the bytes of the literals which were added since the last call to a single shared array, which saves
+     * the overhead of an array per literal and keeps the literals close together in memory. This should be called
+     * when no literals are being added, before the literals are used by other threads.
+     */
+    synchronized void compact() {
+        final Literal[] literals = getLiteralsByIndex();
+        int length = 0;
+        for (int i = myCompactedSize; i < literals.length; i++) {
+            length += literals[i].getLength();
+        }
+
+        final byte[] bytes = new byte[length];
+        int offset = 0;
+        for (int i = myCompactedSize; i < literals.length; i++) {
+            literals[i].moveTo(bytes, offset);
+            offset += literals[i].getLength();
+        }
+        myCompactedSize = literals.length;
+    }
+
+    /**
+     * Returns the number of registered literals, which is also the upper bound (exclusive) of their indices.
+     * @return the number of registered literals
+     */
+    int size() {
+        return myNextIndex.get();
+    }
+}
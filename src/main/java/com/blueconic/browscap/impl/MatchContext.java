@@ -0,0 +1,71 @@
+package com.blueconic.browscap.impl;
+
+/**
+ * Reusable state for matching a useragent against the rules of a parser. A context is used by a single thread at a
+ * time and keeps its buffers between calls, so parsing doesn't allocate in the steady state. The buffers are sized for
+ * the parser which created the context.
+ */
+class MatchContext {
+
+    private final SearchableString mySearchString;
+    private final CandidateSet myPrefixCandidates;
+    private final CandidateSet myPostfixCandidates;
+
+    // Buffers for combining the candidates per block
+    private final long[] myBlock = new long[UserAgentParserImpl.BLOCK_WORDS];
+    private final long[] myPostfixBlock = new long[UserAgentParserImpl.BLOCK_WORDS];
+
+    /**
+     * Creates a new context.
+     * @param numberOfLiterals The number of literals of the rule set
+     * @param automaton The automaton for finding all literals
+     * @param numberOfRules The number of rules
+     */
+    MatchContext(final int numberOfLiterals, final LiteralAutomaton automaton, final int numberOfRules) {
+        mySearchString = new SearchableString("", numberOfLiterals, automaton);
+        myPrefixCandidates = new CandidateSet(numberOfRules);
+        myPostfixCandidates = new CandidateSet(numberOfRules);
+    }
+
+    /**
+     * Prepares the context for matching the specified useragent.
+     * @param userAgent The user agent
+     * @return The searchable representation of the user agent
+     */
+    SearchableString getSearchString(final String userAgent) {
+        mySearchString.reset(userAgent);
+        return mySearchString;
+    }
+
+    /**
+     * Returns the reusable set of candidate rules based on their prefix.
+     * @return the set of candidate rules
+     */
+    CandidateSet getPrefixCandidates() {
+        return myPrefixCandidates;
+    }
+
+    /**
+     * Returns the reusable set of candidate rules based on their postfix.
+     * @return the set of candidate rules
+     */
+    CandidateSet getPostfixCandidates() {
+        return myPostfixCandidates;
+    }
+
+    /**
+     * Returns the reusable buffer for a block of rules to check.
+     * @return the buffer
+     */
+    long[] getBlock() {
+        return myBlock;
+    }
+
+    /**
+     * Returns the reusable buffer for a block of candidate rules based on their postfix.
+     * @return the buffer
+     */
+    long[] getPostfixBlock() {
+        return myPostfixBlock;
+    }
+}
@@ -0,0 +1,334 @@
+package com.blueconic.browscap.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.blueconic.browscap.BrowsCapField;
+import com.blueconic.browscap.Capabilities;
+import com.blueconic.browscap.ParseException;
+import com.blueconic.browscap.UserAgentParser;
+import com.blueconic.browscap.UserAgentService;
+import com.blueconic.browscap.impl.UserAgentParserImpl.Filter;
+
+/**
+ * This class is responsible for writing and reading compact binary snapshots of a parser. A snapshot contains the
+ * literal table, the capability dictionary, the table of the ordered rules, the filter masks, the literal automaton and
+ * the indices of the rules, so a parser can be restored without parsing the CSV file and building the data structures
+ * again. Reading a snapshot copies its contents onto the heap, since the parser uses regular arrays and objects; the
+ * mapping or buffer which is read isn't retained by the restored parser.
+ */
+public final class ParserSnapshot {
+
+    // Identification of the file format
+    private static final int MAGIC = 0x42435053;
+    private static final int FORMAT_VERSION = 4;
+
+    // Hide the constructor
+    private ParserSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of a parser to a file.
+     * @param parser The parser, as loaded by the {@link UserAgentFileParser} or this class
+     * @param path The file to write
+     * @throws IOException If writing the file failed
+     */
+    public static void write(final UserAgentParser parser, final Path path) throws IOException {
+        try (final OutputStream out = Files.newOutputStream(path)) {
+            write(parser, out);
+        }
+    }
+
+    /**
+     * Writes a snapshot of a parser to a stream.
+     * @param parser The parser, as loaded by the {@link UserAgentFileParser} or this class
+     * @param output The stream to write
+     * @throws IOException If writing the stream failed
+     */
+    public static void write(final UserAgentParser parser, final OutputStream output) throws IOException {
+        if (!(parser instanceof UserAgentParserImpl)) {
+            throw new IllegalArgumentException("Unsupported parser implementation: " + parser.getClass());
+        }
+        final UserAgentParserImpl impl = (UserAgentParserImpl) parser;
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+
+        // The literal table, ordered by index
+        final Literal[] literals = impl.getLiterals().getLiteralsByIndex();
+        out.writeInt(literals.length);
+        for (final Literal literal : literals) {
+            writeString(out, literal.toString());
+        }
+
+        // The values of each field by code, and the capabilities with unique properties as the codes of their values,
+        // in which the default properties are referenced as -1, so they keep their own dictionary
+        for (final BrowsCapField field : BrowsCapField.values()) {
+            final List<String> values = impl.getValueDictionary().getValues(field);
+            out.writeInt(values.size());
+            for (final String value : values) {
+                writeString(out, value);
+            }
+        }
+        final RuleTable rules = impl.getRuleTable();
+        final Map<Capabilities, Integer> capabilities = new HashMap<>();
+        capabilities.put(CapabilitiesImpl.DEFAULT, -1);
+        final List<Capabilities> capabilitiesList = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            final Capabilities c = rules.getCapabilities(i);
+            if (!capabilities.containsKey(c)) {
+                capabilities.put(c, capabilitiesList.size());
+                capabilitiesList.add(c);
+            }
+        }
+        out.writeInt(capabilitiesList.size());
+        for (final Capabilities c : capabilitiesList) {
+            for (final BrowsCapField field : BrowsCapField.values()) {
+                out.writeInt(c.getCode(field));
+            }
+        }
+
+        // The capabilities of the rules in sort order, and the table of the rules
+        final int[] ruleCapabilities = new int[rules.size()];
+        for (int i = 0; i < ruleCapabilities.length; i++) {
+            ruleCapabilities[i] = capabilities.get(rules.getCapabilities(i));
+        }
+        writeInts(out, ruleCapabilities);
+        rules.write(out);
+
+        // The filters and their masks
+        final Filter[] filters = impl.getFilters();
+        out.writeInt(filters.length);
+        for (final Filter filter : filters) {
+            out.writeInt(filter.getLiteral().getIndex());
+            out.writeBoolean(filter.isPrefix());
+            final long[] words = filter.getMask().toLongArray();
+            out.writeInt(words.length);
+            for (final long word : words) {
+                out.writeLong(word);
+            }
+        }
+
+        // The automaton and the indices of the rules
+        impl.getAutomaton().write(out);
+        impl.getPrefixes().write(out);
+        impl.getPostfixes().write(out);
+        impl.getExactRules().write(out);
+        impl.getLengths().write(out);
+        out.flush();
+    }
+
+    /**
+     * Reads a snapshot from a file. The file is memory mapped to avoid an intermediate copy, but the restored parser
+     * lives on the heap and doesn't keep the mapping.
+     * @param path The file to read
+     * @return The restored parser
+     * @throws IOException If reading the file failed or if it isn't a valid snapshot
+     */
+    public static UserAgentParser read(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        }
+    }
+
+    /**
+     * Reads a snapshot from a stream, e.g. a resource which can't be memory mapped.
+     * @param input The stream to read
+     * @return The restored parser
+     * @throws IOException If reading the stream failed or if it isn't a valid snapshot
+     */
+    public static UserAgentParser read(final InputStream input) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1 << 16];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return read(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    /**
+     * Reads a snapshot from a buffer.
+     * @param buffer The buffer, positioned at the start of the snapshot
+     * @return The restored parser
+     * @throws IOException If the buffer doesn't contain a valid snapshot
+     */
+    public static UserAgentParser read(final ByteBuffer buffer) throws IOException {
+        try {
+            return readSnapshot(buffer.duplicate());
+        } catch (final BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt BrowsCap parser snapshot", e);
+        }
+    }
+
+    private static UserAgentParser readSnapshot(final ByteBuffer in) throws IOException {
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new IOException("Not a BrowsCap parser snapshot");
+        }
+        final int version = in.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot format version: " + version);
+        }
+
+        // Restore the literals with their original indices
+        final LiteralRegistry registry = new LiteralRegistry();
+        final int numberOfLiterals = readLength(in, Integer.BYTES);
+        for (int i = 0; i < numberOfLiterals; i++) {
+            registry.getLiteral(readString(in));
+        }
+        final Literal[] literals = registry.getLiteralsByIndex();
+
+        // Restore the values with their original codes, and the capabilities
+        final BrowsCapField[] fields = BrowsCapField.values();
+        final ValueDictionary values = new ValueDictionary();
+        for (final BrowsCapField field : fields) {
+            final int numberOfValues = readLength(in, Integer.BYTES);
+            for (int i = 0; i < numberOfValues; i++) {
+                if (values.getCode(field, readString(in)) != i) {
+                    throw new IOException("Corrupt BrowsCap parser snapshot");
+                }
+            }
+        }
+        final Capabilities[] capabilities = new Capabilities[readLength(in, fields.length * Integer.BYTES)];
+        for (int i = 0; i < capabilities.length; i++) {
+            final int[] codes = new int[fields.length];
+            for (int j = 0; j < fields.length; j++) {
+                codes[j] = in.getInt();
+                if (codes[j] < 0 || codes[j] >= values.size(fields[j])) {
+                    throw new IOException("Corrupt BrowsCap parser snapshot");
+                }
+            }
+            capabilities[i] = new CapabilitiesImpl(values, codes);
+        }
+
+        // Restore the table of the ordered rules
+        final int[] ruleCapabilities = readInts(in);
+        final Capabilities[] capabilitiesByRule = new Capabilities[ruleCapabilities.length];
+        for (int i = 0; i < capabilitiesByRule.length; i++) {
+            final int capabilitiesIndex = ruleCapabilities[i];
+            capabilitiesByRule[i] = capabilitiesIndex < 0 ? CapabilitiesImpl.DEFAULT : capabilities[capabilitiesIndex];
+        }
+        final RuleTable rules = RuleTable.read(in, literals, capabilitiesByRule);
+
+        // Restore the filters with their prebuilt masks
+        final Filter[] filters = new Filter[readLength(in, 2 * Integer.BYTES + 1)];
+        for (int i = 0; i < filters.length; i++) {
+            final Literal literal = literals[in.getInt()];
+            final boolean isPrefix = in.get() != 0;
+            final int numberOfWords = readLength(in, Long.BYTES);
+            final LongBuffer words = in.asLongBuffer();
+            words.limit(numberOfWords);
+            filters[i] = new Filter(literal, isPrefix, BitSet.valueOf(words));
+            in.position(in.position() + numberOfWords * Long.BYTES);
+        }
+
+        // Restore the automaton and the prebuilt indices
+        final LiteralAutomaton automaton = LiteralAutomaton.read(in, literals);
+        final AnchorIndex prefixes = AnchorIndex.read(in);
+        final AnchorIndex postfixes = AnchorIndex.read(in);
+        final ExactRuleIndex exactRules = ExactRuleIndex.read(in, literals);
+        final LengthIndex lengths = LengthIndex.read(in);
+        return new UserAgentParserImpl(rules, registry, values, filters, automaton, prefixes, postfixes, exactRules,
+                lengths);
+    }
+
+    /**
+     * Generates the snapshot of the bundled BrowsCap CSV file, which is done at build time.
+     * @param args The path of the snapshot file to write
+     * @throws IOException If reading the CSV file or writing the snapshot failed
+     * @throws ParseException If the CSV file contains an invalid pattern
+     */
+    public static void main(final String[] args) throws IOException, ParseException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: ParserSnapshot <snapshot file>");
+        }
+        write(new UserAgentService().loadCsvParser(), Paths.get(args[0]));
+    }
+
+    static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Reads the length of a sequence of elements, which must fit in the remaining bytes, so a corrupt length fails
+    // before anything is allocated for it
+    static int readLength(final ByteBuffer in, final int elementSize) throws IOException {
+        final int length = in.getInt();
+        if (length < 0 || (long) length * elementSize > in.remaining()) {
+            throw new IOException("Corrupt BrowsCap parser snapshot");
+        }
+        return length;
+    }
+
+    static String readString(final ByteBuffer in) throws IOException {
+        final byte[] bytes = new byte[readLength(in, Byte.BYTES)];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    static void writeInts(final DataOutputStream out, final int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (final int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    static int[] readInts(final ByteBuffer in) throws IOException {
+        final int[] values = new int[readLength(in, Integer.BYTES)];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    static void writeLongs(final DataOutputStream out, final long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (final long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    static long[] readLongs(final ByteBuffer in) throws IOException {
+        final long[] values = new long[readLength(in, Long.BYTES)];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + values.length * Long.BYTES);
+        return values;
+    }
+
+    static void writeChars(final DataOutputStream out, final char[] values) throws IOException {
+        out.writeInt(values.length);
+        for (final char value : values) {
+            out.writeChar(value);
+        }
+    }
+
+    static char[] readChars(final ByteBuffer in) throws IOException {
+        final char[] values = new char[readLength(in, Character.BYTES)];
+        in.asCharBuffer().get(values);
+        in.position(in.position() + values.length * Character.BYTES);
+        return values;
+    }
+}
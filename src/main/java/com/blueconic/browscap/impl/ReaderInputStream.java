@@ -0,0 +1,93 @@
+package com.blueconic.browscap.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Input stream which encodes the characters of a reader as UTF-8, so character input can be read by the
+ * {@link CsvTokenizer}. Closing the stream closes the reader.
+ */
+class ReaderInputStream extends InputStream {
+
+    private final Reader myReader;
+    private final CharsetEncoder myEncoder;
+
+    // The characters which haven't been encoded and the encoded bytes which haven't been read, both in read mode
+    private final CharBuffer myChars;
+    private final ByteBuffer myBytes;
+
+    private boolean myEndOfInput;
+    private boolean myFlushed;
+
+    /**
+     * Creates a new stream.
+     * @param reader The reader providing the characters
+     * @param bufferSize The number of characters which are read at once
+     */
+    ReaderInputStream(final Reader reader, final int bufferSize) {
+        myReader = reader;
+        myEncoder = UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        myChars = CharBuffer.allocate(bufferSize);
+        myChars.flip();
+        myBytes = ByteBuffer.allocate(bufferSize * 3);
+        myBytes.flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (!myBytes.hasRemaining()) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+        final int read = Math.min(len, myBytes.remaining());
+        myBytes.get(b, off, read);
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        myReader.close();
+    }
+
+    // Encode the next characters, returns false if all characters have been encoded
+    private boolean fill() throws IOException {
+        if (myFlushed) {
+            return false;
+        }
+
+        if (!myEndOfInput) {
+            // Keep the characters which haven't been encoded, e.g. the first half of a surrogate pair
+            myChars.compact();
+            final int read = myReader.read(myChars);
+            myChars.flip();
+            myEndOfInput = read < 0;
+        }
+
+        myBytes.clear();
+        if (myEncoder.encode(myChars, myBytes, myEndOfInput).isUnderflow() && myEndOfInput) {
+            myEncoder.flush(myBytes);
+            myFlushed = true;
+        }
+        myBytes.flip();
+        return true;
+    }
+}
@@ -1,5 +1,9 @@
 package com.blueconic.browscap.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import com.blueconic.browscap.Capabilities;
 
 /**
@@ -16,6 +20,13 @@ public class Rule {
     // The size of the pattern
     private final int mySize;
 
+    // The minimum length of a matching useragent, which is the total length of the literals
+    private final int myMinLength;
+
+    // The combined bigram signatures of the literals
+    private final long myLowSignature;
+    private final long myHighSignature;
+
     // The browser properties
     private final Capabilities myCapabilities;
 
@@ -30,11 +41,52 @@ public class Rule {
      */
     Rule(final Literal prefix, final Literal[] suffixes, final Literal postfix, final String pattern,
             final Capabilities capabilities) {
+        this(prefix, suffixes, postfix, pattern.length(), capabilities);
+    }
+
+    /**
+     * Creates a new rule.
+     * @param prefix The prefix of the matching pattern, potentially <code>null</code>
+     * @param suffixes The required substrings separated by wildcards, potentially <code>null</code> to indicate no
+     *            wildcards
+     * @param postfix The postfix of the matching pattern, potentially <code>null</code>
+     * @param size The length of the original string representation of the matching pattern
+     * @param capabilities The browser properties for this rule
+     */
+    Rule(final Literal prefix, final Literal[] suffixes, final Literal postfix, final int size,
+            final Capabilities capabilities) {
         myPrefix = prefix;
         mySuffixes = suffixes;
         myPostfix = postfix;
+        mySize = size;
         myCapabilities = capabilities;
-        mySize = pattern.length();
+
+        int minLength = 0;
+        long lowSignature = 0;
+        long highSignature = 0;
+        for (final Literal literal : getLiterals()) {
+            minLength += literal.getLength();
+            lowSignature |= literal.getLowSignature();
+            highSignature |= literal.getHighSignature();
+        }
+        myMinLength = minLength;
+        myLowSignature = lowSignature;
+        myHighSignature = highSignature;
+    }
+
+    // All literals of the pattern
+    private Literal[] getLiterals() {
+        final List<Literal> result = new ArrayList<>();
+        if (myPrefix != null) {
+            result.add(myPrefix);
+        }
+        if (mySuffixes != null) {
+            result.addAll(Arrays.asList(mySuffixes));
+        }
+        if (myPostfix != null) {
+            result.add(myPostfix);
+        }
+        return result.toArray(new Literal[0]);
     }
 
     /**
@@ -82,7 +134,7 @@ public class Rule {
     }
 
     private static boolean requires(final Literal literal, final String value) {
-        return literal != null && literal.toString().contains(value);
+        return literal != null && literal.contains(value);
     }
 
     public Capabilities getCapabilities() {
@@ -93,8 +145,40 @@ public class Rule {
         return mySize;
     }
 
+    /**
+     * Returns the minimum length of a useragent which can match this rule.
+     * @return the total length of the literals
+     */
+    int getMinLength() {
+        return myMinLength;
+    }
+
+    /**
+     * Returns the low word of the combined bigram signature of the literals.
+     * @return bits 0 to 63 of the signature
+     * @see BigramSignature
+     */
+    long getLowSignature() {
+        return myLowSignature;
+    }
+
+    /**
+     * Returns the high word of the combined bigram signature of the literals.
+     * @return bits 64 to 127 of the signature
+     * @see BigramSignature
+     */
+    long getHighSignature() {
+        return myHighSignature;
+    }
+
     final boolean matches(final SearchableString value) {
 
+        // The literals can't overlap, and all their bigrams should occur
+        if (value.getSize() < myMinLength || (myLowSignature & ~value.getLowSignature()) != 0
+                || (myHighSignature & ~value.getHighSignature()) != 0) {
+            return false;
+        }
+
         // Inclusive
         final int start;
         if (myPrefix == null) {
@@ -151,12 +235,7 @@ public class Rule {
 
     // Return found index or -1
     private static int checkWildCard(final SearchableString value, final Literal suffix, final int start) {
-        for (final int index : value.getIndices(suffix)) {
-            if (index >= start) {
-                return index;
-            }
-        }
-        return -1;
+        return value.indexOf(suffix, start);
     }
 
     /**
@@ -182,6 +261,47 @@ public class Rule {
         return result.toString();
     }
 
+    /**
+     * Tests whether the reconstructed original pattern equals a pattern, without reconstructing it.
+     * @param pattern The pattern to compare with
+     * @return <code>true</code> if the patterns are equal, <code>false</code> otherwise
+     * @see #getPattern()
+     */
+    boolean hasPattern(final String pattern) {
+        int from = 0;
+        if (myPrefix != null) {
+            if (!myPrefix.occursAt(pattern, from)) {
+                return false;
+            }
+            from += myPrefix.getLength();
+        }
+        if (mySuffixes != null) {
+            if (!isWildcard(pattern, from++)) {
+                return false;
+            }
+            for (final Literal sub : mySuffixes) {
+                if (!sub.occursAt(pattern, from)) {
+                    return false;
+                }
+                from += sub.getLength();
+                if (!isWildcard(pattern, from++)) {
+                    return false;
+                }
+            }
+        }
+        if (myPostfix != null) {
+            if (!myPostfix.occursAt(pattern, from)) {
+                return false;
+            }
+            from += myPostfix.getLength();
+        }
+        return from == pattern.length();
+    }
+
+    private static boolean isWildcard(final String pattern, final int index) {
+        return index < pattern.length() && pattern.charAt(index) == '*';
+    }
+
     /**
      * {@inheritDoc}
      */
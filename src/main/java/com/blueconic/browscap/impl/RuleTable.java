@@ -0,0 +1,313 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.impl.ParserSnapshot.readInts;
+import static com.blueconic.browscap.impl.ParserSnapshot.readLongs;
+import static com.blueconic.browscap.impl.ParserSnapshot.writeInts;
+import static com.blueconic.browscap.impl.ParserSnapshot.writeLongs;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.blueconic.browscap.Capabilities;
+
+/**
+ * Compact storage of the ordered rules as parallel arrays with a row per rule, instead of an object per rule. The
+ * rules only store the indices of their literals, and the suffixes of all rules are stored in a single array.
+ * Checking the candidates of a useragent walks these primitive arrays, so the data of neighbouring rules is close
+ * together in memory. The rule objects are only created on request.
+ */
+class RuleTable {
+
+    // The literals by index, shared by all rules
+    private final Literal[] myLiterals;
+
+    // Per rule: the index of the prefix and of the postfix, -1 if there is none
+    private final int[] myPrefixes;
+    private final int[] myPostfixes;
+
+    // Per rule: the range of its suffixes in the shared array, a count of -1 indicates no wildcards
+    private final int[] mySuffixOffsets;
+    private final int[] mySuffixCounts;
+    private final int[] mySuffixes;
+
+    // Per rule: the minimum length of a matching useragent and the low and high word of the bigram signature
+    private final int[] myMinLengths;
+    private final long[] mySignatures;
+
+    // Per rule: its capabilities
+    private final Capabilities[] myCapabilities;
+
+    /**
+     * Creates the table for the rules.
+     * @param orderedRules The rules, ordered by priority
+     * @param literals The literals of the rules, ordered by index
+     */
+    RuleTable(final Rule[] orderedRules, final Literal[] literals) {
+        myLiterals = literals;
+        final int size = orderedRules.length;
+        myPrefixes = new int[size];
+        myPostfixes = new int[size];
+        mySuffixOffsets = new int[size];
+        mySuffixCounts = new int[size];
+        myMinLengths = new int[size];
+        mySignatures = new long[size * 2];
+        myCapabilities = new Capabilities[size];
+
+        int numberOfSuffixes = 0;
+        for (final Rule rule : orderedRules) {
+            if (rule.getSuffixes() != null) {
+                numberOfSuffixes += rule.getSuffixes().length;
+            }
+        }
+        mySuffixes = new int[numberOfSuffixes];
+
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            final Rule rule = orderedRules[i];
+            myPrefixes[i] = getIndex(rule.getPrefix());
+            myPostfixes[i] = getIndex(rule.getPostfix());
+
+            final Literal[] suffixes = rule.getSuffixes();
+            mySuffixOffsets[i] = offset;
+            mySuffixCounts[i] = suffixes == null ? -1 : suffixes.length;
+            if (suffixes != null) {
+                for (final Literal suffix : suffixes) {
+                    mySuffixes[offset++] = suffix.getIndex();
+                }
+            }
+
+            myMinLengths[i] = rule.getMinLength();
+            mySignatures[i * 2] = rule.getLowSignature();
+            mySignatures[i * 2 + 1] = rule.getHighSignature();
+            myCapabilities[i] = rule.getCapabilities();
+        }
+    }
+
+    private RuleTable(final Literal[] literals, final int[] prefixes, final int[] postfixes, final int[] suffixOffsets,
+            final int[] suffixCounts, final int[] suffixes, final int[] minLengths, final long[] signatures,
+            final Capabilities[] capabilities) {
+        myLiterals = literals;
+        myPrefixes = prefixes;
+        myPostfixes = postfixes;
+        mySuffixOffsets = suffixOffsets;
+        mySuffixCounts = suffixCounts;
+        mySuffixes = suffixes;
+        myMinLengths = minLengths;
+        mySignatures = signatures;
+        myCapabilities = capabilities;
+    }
+
+    /**
+     * Writes the table without the capabilities, so it can be restored without building it again.
+     * @param out The output
+     * @throws IOException If writing failed
+     */
+    void write(final DataOutputStream out) throws IOException {
+        writeInts(out, myPrefixes);
+        writeInts(out, myPostfixes);
+        writeInts(out, mySuffixOffsets);
+        writeInts(out, mySuffixCounts);
+        writeInts(out, mySuffixes);
+        writeInts(out, myMinLengths);
+        writeLongs(out, mySignatures);
+    }
+
+    /**
+     * Reads a table written by {@link #write(DataOutputStream)}.
+     * @param in The input
+     * @param literals The literals of the rules, ordered by index
+     * @param capabilities The capabilities per rule
+     * @return The table
+     * @throws IOException If the input contains an invalid length
+     */
+    static RuleTable read(final ByteBuffer in, final Literal[] literals, final Capabilities[] capabilities)
+            throws IOException {
+        final int[] prefixes = readInts(in);
+        final int[] postfixes = readInts(in);
+        final int[] suffixOffsets = readInts(in);
+        final int[] suffixCounts = readInts(in);
+        final int[] suffixes = readInts(in);
+        final int[] minLengths = readInts(in);
+        final long[] signatures = readLongs(in);
+        final int size = capabilities.length;
+        if (prefixes.length != size || postfixes.length != size || suffixOffsets.length != size
+                || suffixCounts.length != size || minLengths.length != size || signatures.length != size * 2) {
+            throw new IOException("Corrupt BrowsCap parser snapshot");
+        }
+
+        // The literals are only looked up while matching, so their indices are checked in advance
+        for (int i = 0; i < size; i++) {
+            if (!isLiteral(prefixes[i], literals, true) || !isLiteral(postfixes[i], literals, true)
+                    || suffixOffsets[i] < 0 || suffixOffsets[i] + Math.max(suffixCounts[i], 0) > suffixes.length) {
+                throw new IOException("Corrupt BrowsCap parser snapshot");
+            }
+        }
+        for (final int suffix : suffixes) {
+            if (!isLiteral(suffix, literals, false)) {
+                throw new IOException("Corrupt BrowsCap parser snapshot");
+            }
+        }
+        return new RuleTable(literals, prefixes, postfixes, suffixOffsets, suffixCounts, suffixes, minLengths,
+                signatures, capabilities);
+    }
+
+    private static boolean isLiteral(final int index, final Literal[] literals, final boolean isOptional) {
+        return index < literals.length && (index >= 0 || isOptional && index == -1);
+    }
+
+    private static int getIndex(final Literal literal) {
+        return literal == null ? -1 : literal.getIndex();
+    }
+
+    private Literal getLiteral(final int index) {
+        return index < 0 ? null : myLiterals[index];
+    }
+
+    /**
+     * Returns the number of rules.
+     * @return the number of rules
+     */
+    int size() {
+        return myPrefixes.length;
+    }
+
+    /**
+     * Returns the browser properties of a rule.
+     * @param rule The index of the rule
+     * @return the browser properties
+     */
+    Capabilities getCapabilities(final int rule) {
+        return myCapabilities[rule];
+    }
+
+    /**
+     * Creates an object for a rule, with the same literals and capabilities.
+     * @param rule The index of the rule
+     * @return the new rule
+     */
+    Rule getRule(final int rule) {
+        final Literal prefix = getLiteral(myPrefixes[rule]);
+        final Literal postfix = getLiteral(myPostfixes[rule]);
+        Literal[] suffixes = null;
+        int size = myMinLengths[rule];
+        if (mySuffixCounts[rule] >= 0) {
+            suffixes = new Literal[mySuffixCounts[rule]];
+            for (int i = 0; i < suffixes.length; i++) {
+                suffixes[i] = myLiterals[mySuffixes[mySuffixOffsets[rule] + i]];
+            }
+
+            // The pattern has a wildcard before each suffix and after the last one
+            size += suffixes.length + 1;
+        }
+        return new Rule(prefix, suffixes, postfix, size, getCapabilities(rule));
+    }
+
+    /**
+     * Creates the objects for all rules.
+     * @return the new rules, ordered by priority
+     */
+    Rule[] getRules() {
+        final Rule[] result = new Rule[size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = getRule(i);
+        }
+        return result;
+    }
+
+    /**
+     * Tests whether a candidate rule matches a useragent, of which the prefix and postfix are already known to match,
+     * e.g. because it was found by the {@link AnchorIndex} of both. Only the parts which depend on the shape of the
+     * rule are checked: the length for a rule without wildcards, nothing more for a rule without suffixes and
+     * otherwise the suffixes between the anchors.
+     * @param rule The index of the rule
+     * @param value The useragent
+     * @return <code>true</code> if the rule matches, <code>false</code> otherwise
+     */
+    boolean matchesCandidate(final int rule, final SearchableString value) {
+
+        // The literals can't overlap, and all their bigrams should occur
+        final int size = value.getSize();
+        if (size < myMinLengths[rule] || (mySignatures[rule * 2] & ~value.getLowSignature()) != 0
+                || (mySignatures[rule * 2 + 1] & ~value.getHighSignature()) != 0) {
+            return false;
+        }
+
+        // Without wildcards the prefix is the whole pattern, with only wildcards the anchors can't overlap
+        final int count = mySuffixCounts[rule];
+        if (count <= 0) {
+            return count == 0 || size == myMinLengths[rule];
+        }
+
+        final int prefix = myPrefixes[rule];
+        final int postfix = myPostfixes[rule];
+        final int start = prefix < 0 ? 0 : myLiterals[prefix].getLength();
+        final int end = postfix < 0 ? size : size - myLiterals[postfix].getLength();
+        return findSuffixes(rule, count, value, start, end);
+    }
+
+    /**
+     * Tests whether a rule matches a useragent, in the same way as {@link Rule#matches(SearchableString)}.
+     * @param rule The index of the rule
+     * @param value The useragent
+     * @return <code>true</code> if the rule matches, <code>false</code> otherwise
+     */
+    boolean matches(final int rule, final SearchableString value) {
+
+        // The literals can't overlap, and all their bigrams should occur
+        final int size = value.getSize();
+        if (size < myMinLengths[rule] || (mySignatures[rule * 2] & ~value.getLowSignature()) != 0
+                || (mySignatures[rule * 2 + 1] & ~value.getHighSignature()) != 0) {
+            return false;
+        }
+
+        // Inclusive
+        final int start;
+        final int prefix = myPrefixes[rule];
+        if (prefix < 0) {
+            start = 0;
+        } else if (value.startsWith(myLiterals[prefix])) {
+            start = myLiterals[prefix].getLength();
+        } else {
+            return false;
+        }
+
+        // Exclusive
+        final int end;
+        final int postfix = myPostfixes[rule];
+        if (postfix < 0) {
+            end = size;
+        } else if (value.endsWith(myLiterals[postfix])) {
+            end = size - myLiterals[postfix].getLength();
+        } else {
+            return false;
+        }
+
+        final int count = mySuffixCounts[rule];
+        if (count < 0) {
+            // No wildcards
+            return start == end;
+        }
+
+        return findSuffixes(rule, count, value, start, end);
+    }
+
+    // Find the suffixes in order, without overlap, between the start (inclusive) and end (exclusive)
+    private boolean findSuffixes(final int rule, final int count, final SearchableString value, final int start,
+            final int end) {
+        int from = start;
+        final int offset = mySuffixOffsets[rule];
+        for (int i = offset; i < offset + count; i++) {
+            final Literal suffix = myLiterals[mySuffixes[i]];
+            final int match = value.indexOf(suffix, from);
+            if (match == -1) {
+                return false;
+            }
+            from = match + suffix.getLength();
+            if (from > end) {
+                return false;
+            }
+        }
+        return from <= end;
+    }
+}
@@ -1,34 +1,157 @@
 package com.blueconic.browscap.impl;
 
-import java.util.BitSet;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
- * This class represents a searchable useragent strings. It relies and simple char arrays for low memory use and fast
- * operations. It provided methods for finding substrings and provides caches for better performance.
+ * This class represents a searchable useragent strings. It relies and simple Latin-1 byte arrays for low memory use and
+ * fast operations, the characters are only kept as well for the rare values which aren't Latin-1. It provided methods
+ * for finding substrings and provides caches for better performance. Instances can be reused for multiple useragents;
+ * all buffers are kept and the caches are invalidated by generation stamps, so a reset doesn't allocate in the steady
+ * state.
  */
-class SearchableString {
+class SearchableString implements LiteralAutomaton.Occurrences {
 
-    private static final int[] EMPTY = new int[0];
-    private static final int[][] SINGLE_VALUES = getSingleValues();
+    // Generations are reset before they can overflow the stamped caches
+    private static final int MAX_GENERATION = (1 << 30) - 1;
 
-    private final char[] myChars;
-    private final int[][] myIndices;
-    private final Cache myPrefixCache = new Cache();
-    private final Cache myPostfixCache = new Cache();
+    // The lowercase characters as bytes, see Literal#toByte(char), only the first mySize bytes are valid
+    private byte[] myBytes = new byte[0];
+    private int mySize;
 
-    // Reusable buffer for findIndices
-    private final int[] myBuffer;
+    // The lowercase characters, only valid if the value isn't Latin-1
+    private char[] myChars = new char[0];
+    private boolean myIsWide;
+
+    // The signature of the bigrams of the value
+    private long myLowSignature;
+    private long myHighSignature;
+
+    private final LiteralAutomaton myAutomaton;
+    private final Cache myPrefixCache;
+    private final Cache myPostfixCache;
+
+    // The occurrences of all literals, per literal a range of this array which is valid in the current generation
+    private int[] myOccurrences = new int[64];
+    private int myOccurrencesSize;
+    private final int[] myStarts;
+    private final int[] myCounts;
+    private final int[] myStamps;
+    private int myGeneration;
+
+    // Reusable buffers for the occurrences reported by the automaton
+    private int[] myFoundLiterals = new int[64];
+    private int[] myFoundIndices = new int[64];
+    private int myFoundSize;
+    private final int[] myTouched;
 
     /**
      * Creates a new instance for the specified string value.
      * @param stringValue The user agent string
+     * @param numberOfLiterals The number of literals of the rule set, see {@link LiteralRegistry#size()}
      */
-    SearchableString(final String stringValue) {
-        myChars = stringValue.toCharArray();
-        final int max = Literal.getNumberOfInstances() + 1;
-        myIndices = new int[max][];
-        myBuffer = new int[myChars.length];
+    SearchableString(final String stringValue, final int numberOfLiterals) {
+        this(stringValue, numberOfLiterals, null);
+    }
+
+    /**
+     * Creates a new instance for the specified string value, finding the occurrences of all literals covered by the
+     * automaton in a single scan.
+     * @param stringValue The user agent string
+     * @param numberOfLiterals The number of literals of the rule set, see {@link LiteralRegistry#size()}
+     * @param automaton The automaton for finding all literals, potentially <code>null</code> to search for each
+     *            literal separately
+     */
+    SearchableString(final String stringValue, final int numberOfLiterals, final LiteralAutomaton automaton) {
+        myAutomaton = automaton;
+        myPrefixCache = new Cache(numberOfLiterals);
+        myPostfixCache = new Cache(numberOfLiterals);
+        myStarts = new int[numberOfLiterals];
+        myCounts = new int[numberOfLiterals];
+        myStamps = new int[numberOfLiterals];
+        myTouched = new int[numberOfLiterals];
+        reset(stringValue);
+    }
+
+    /**
+     * Reuses this instance for another string value. The value is converted to lowercase.
+     * @param stringValue The user agent string
+     */
+    void reset(final String stringValue) {
+
+        // Invalidate all cached values
+        myPrefixCache.clear();
+        myPostfixCache.clear();
+        myOccurrencesSize = 0;
+        myGeneration++;
+        if (myGeneration > MAX_GENERATION) {
+            Arrays.fill(myStamps, 0);
+            myGeneration = 1;
+        }
+
+        setBytes(stringValue);
+        setSignature();
+        if (myAutomaton != null) {
+            fillOccurrences(myAutomaton);
+        }
+    }
+
+    private void setSignature() {
+        long low = 0;
+        long high = 0;
+        for (int i = 1; i < mySize; i++) {
+            final int bit = BigramSignature.getBit(myBytes[i - 1] & 0xff, myBytes[i] & 0xff);
+            if (bit < 64) {
+                low |= 1L << bit;
+            } else {
+                high |= 1L << bit;
+            }
+        }
+        myLowSignature = low;
+        myHighSignature = high;
+    }
+
+    // Copy the lowercase characters as bytes, folding the case of ASCII values while copying
+    private void setBytes(final String stringValue) {
+        final int length = stringValue.length();
+        if (myBytes.length < length) {
+            myBytes = new byte[Math.max(length, myBytes.length * 2)];
+        }
+
+        myIsWide = false;
+        for (int i = 0; i < length; i++) {
+            char c = stringValue.charAt(i);
+            if (c >= 128) {
+                // Rely on the full lowercase conversion, which may change the length
+                setLowerCase(stringValue.toLowerCase());
+                return;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            myBytes[i] = (byte) c;
+        }
+        mySize = length;
+    }
+
+    // Copy a lowercase value which isn't ASCII, keeping the characters as well if it isn't Latin-1
+    private void setLowerCase(final String lowerCase) {
+        final int length = lowerCase.length();
+        if (myBytes.length < length) {
+            myBytes = new byte[length];
+        }
+        for (int i = 0; i < length; i++) {
+            final char c = lowerCase.charAt(i);
+            myBytes[i] = Literal.toByte(c);
+            myIsWide |= c > 0xff;
+        }
+        if (myIsWide) {
+            if (myChars.length < length) {
+                myChars = new char[length];
+            }
+            lowerCase.getChars(0, length, myChars, 0);
+        }
+        mySize = length;
     }
 
     /**
@@ -36,7 +159,39 @@ class SearchableString {
      * @return The size
      */
     int getSize() {
-        return myChars.length;
+        return mySize;
+    }
+
+    /**
+     * Returns the low word of the bigram signature of the value.
+     * @return bits 0 to 63 of the signature
+     * @see BigramSignature
+     */
+    long getLowSignature() {
+        return myLowSignature;
+    }
+
+    /**
+     * Returns the high word of the bigram signature of the value.
+     * @return bits 64 to 127 of the signature
+     * @see BigramSignature
+     */
+    long getHighSignature() {
+        return myHighSignature;
+    }
+
+    /**
+     * Returns the lowercase character at the specified index.
+     * @param index The index, smaller than the size
+     * @return The character
+     */
+    char charAt(final int index) {
+        return myIsWide ? myChars[index] : (char) (myBytes[index] & 0xff);
+    }
+
+    // Compare the bytes, or the characters if the literal can't be compared as bytes
+    private boolean matches(final Literal literal, final int from) {
+        return literal.isWide() ? literal.matches(this, from) : literal.matches(myBytes, mySize, from);
     }
 
     /**
@@ -54,7 +209,7 @@ class SearchableString {
         }
 
         // Get the answer and cache the result
-        final boolean result = literal.matches(myChars, 0);
+        final boolean result = matches(literal, 0);
         myPrefixCache.set(index, result);
         return result;
     }
@@ -74,69 +229,158 @@ class SearchableString {
         }
 
         // Get the answer and cache the result
-        final boolean result = literal.matches(myChars, myChars.length - literal.getLength());
+        final boolean result = matches(literal, mySize - literal.getLength());
         myPostfixCache.set(index, result);
         return result;
     }
 
     /**
-     * Returns all indices where the literal argument can be found in this String. Results are cached for better
-     * performance.
+     * Indicates whether the literal argument can be found in this String. Results are cached for better performance.
+     * @param literal The string that should be found
+     * @return <code>true</code> if the literal can be found, <code>false</code> otherwise
+     */
+    boolean contains(final Literal literal) {
+        return getCount(literal) > 0;
+    }
+
+    /**
+     * Returns the first index, not smaller than the from argument, where the literal argument can be found in this
+     * String. Results are cached for better performance.
+     * @param literal The string that should be found
+     * @param from The minimal index
+     * @return the found index, or -1 if the literal can't be found from that index
+     */
+    int indexOf(final Literal literal, final int from) {
+        final int count = getCount(literal);
+        final int start = myStarts[literal.getIndex()];
+        for (int i = start; i < start + count; i++) {
+            final int value = myOccurrences[i];
+            if (value >= from) {
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of occurrences of the literal, finding them if they're not yet known.
      * @param literal The string that should be found
-     * @return all indices where the literal argument can be found in this String.
+     * @return the number of occurrences
      */
-    int[] getIndices(final Literal literal) {
+    private int getCount(final Literal literal) {
 
         // Check whether the answer is already in the cache
         final int index = literal.getIndex();
-        final int[] cached = myIndices[index];
-        if (cached != null) {
-            return cached;
+        if (myStamps[index] == myGeneration) {
+            return myCounts[index];
+        }
+
+        // All occurrences of covered literals are already known
+        myStamps[index] = myGeneration;
+        myStarts[index] = myOccurrencesSize;
+        if (myAutomaton != null && myAutomaton.covers(literal)) {
+            myCounts[index] = 0;
+            return 0;
         }
 
         // Find all indices
-        final int[] values = findIndices(literal);
-        myIndices[index] = values;
-        return values;
+        myCounts[index] = findIndices(literal);
+        return myCounts[index];
     }
 
     /**
-     * Returns all indices where the literal argument can be found in this String.
+     * {@inheritDoc}
+     */
+    @Override
+    public void add(final Literal literal, final int index) {
+        if (myFoundSize == myFoundLiterals.length) {
+            myFoundLiterals = Arrays.copyOf(myFoundLiterals, myFoundSize * 2);
+            myFoundIndices = Arrays.copyOf(myFoundIndices, myFoundSize * 2);
+        }
+        myFoundLiterals[myFoundSize] = literal.getIndex();
+        myFoundIndices[myFoundSize] = index;
+        myFoundSize++;
+    }
+
+    /**
+     * Fills the cached occurrences for all literals found by the automaton.
+     * @param automaton The automaton
+     */
+    private void fillOccurrences(final LiteralAutomaton automaton) {
+
+        // Collect the occurrences as literal and index pairs
+        myFoundSize = 0;
+        automaton.scan(myBytes, mySize, this);
+
+        // Count the occurrences per literal
+        int touched = 0;
+        for (int i = 0; i < myFoundSize; i++) {
+            final int literal = myFoundLiterals[i];
+            if (myStamps[literal] != myGeneration) {
+                myStamps[literal] = myGeneration;
+                myCounts[literal] = 0;
+                myTouched[touched++] = literal;
+            }
+            myCounts[literal]++;
+        }
+
+        // Reserve a range per literal
+        ensureOccurrences(myFoundSize);
+        for (int i = 0; i < touched; i++) {
+            final int literal = myTouched[i];
+            myStarts[literal] = myOccurrencesSize;
+            myOccurrencesSize += myCounts[literal];
+            myCounts[literal] = 0;
+        }
+
+        // Store the indices, which remain sorted per literal
+        for (int i = 0; i < myFoundSize; i++) {
+            final int literal = myFoundLiterals[i];
+            myOccurrences[myStarts[literal] + myCounts[literal]] = myFoundIndices[i];
+            myCounts[literal]++;
+        }
+    }
+
+    /**
+     * Finds all indices where the literal argument can be found in this String and stores them as the next range of
+     * occurrences.
      * @param literal The string that should be found
-     * @return all indices where the literal argument can be found in this String.
+     * @return the number of found indices
      */
-    private int[] findIndices(final Literal literal) {
+    private int findIndices(final Literal literal) {
 
+        ensureOccurrences(mySize);
         int count = 0;
-        final char s = literal.getFirstChar();
-        for (int i = 0; i < myChars.length; i++) {
+        final byte s = literal.getFirstByte();
+        final int last = mySize - literal.getLength();
+        for (int i = nextCandidate(s, 0, last); i >= 0; i = nextCandidate(s, i + 1, last)) {
 
-            // Check the first char for better performance and check the complete string
-            if ((myChars[i] == s || s == '?') && literal.matches(myChars, i)) {
+            // Search the first byte for better performance and check the complete string
+            if (matches(literal, i)) {
 
                 // This index matches
-                myBuffer[count] = i;
+                myOccurrences[myOccurrencesSize + count] = i;
                 count++;
             }
         }
 
-        // Check whether any match has been found
-        if (count == 0) {
-            return EMPTY;
-        }
+        myOccurrencesSize += count;
+        return count;
+    }
 
-        // Use an existing array
-        if (count == 1 && myBuffer[0] < SINGLE_VALUES.length) {
-            final int index = myBuffer[0];
-            return SINGLE_VALUES[index];
+    // The next index up to the last one at which the first byte occurs, a question mark occurs everywhere
+    private int nextCandidate(final byte first, final int from, final int last) {
+        if (first == '?') {
+            return from <= last ? from : -1;
         }
+        return ByteSearch.indexOf(myBytes, first, from, last + 1);
+    }
 
-        // Copy the values
-        final int[] values = new int[count];
-        for (int i = 0; i < count; i++) {
-            values[i] = myBuffer[i];
+    // Make sure the specified number of occurrences can be added
+    private void ensureOccurrences(final int count) {
+        if (myOccurrencesSize + count > myOccurrences.length) {
+            myOccurrences = Arrays.copyOf(myOccurrences, Math.max(myOccurrencesSize + count, myOccurrences.length * 2));
         }
-        return values;
     }
 
     /**
@@ -144,25 +388,23 @@ class SearchableString {
      */
     @Override
     public String toString() {
-        return new String(myChars);
-    }
-
-    private static final int[][] getSingleValues() {
-        final int[][] result = new int[1024][];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = new int[]{i};
-        }
-        return result;
+        return myIsWide ? new String(myChars, 0, mySize) : new String(myBytes, 0, mySize, StandardCharsets.ISO_8859_1);
     }
 
-    /** Compact cache for boolean values. */
+    /** Compact cache for boolean values, which can be cleared without touching the stored values. */
     static class Cache {
 
-        // The boolean values
-        private final BitSet myValues = new BitSet();
+        // Per index the generation in which the value has been stored and the boolean value in the lowest bit
+        private final int[] myValues;
+        private int myGeneration = 1;
 
-        // Indicates whether a value has been stored for an index
-        private final BitSet myIsKnown = new BitSet();
+        /**
+         * Creates a cache for the specified number of values.
+         * @param size The number of values
+         */
+        Cache(final int size) {
+            myValues = new int[size];
+        }
 
         /**
          * Gets the cached value for the specified index.
@@ -170,19 +412,13 @@ class SearchableString {
          * @return The cached boolean value, or <code>null</code> if no value is present in the cache.
          */
         Boolean get(final int index) {
-
-            // Check whether a true value has been set
-            if (myValues.get(index)) {
-                return Boolean.TRUE;
-            }
+            final int value = myValues[index];
 
             // Check whether any value has been stored
-            if (myIsKnown.get(index)) {
-                return Boolean.FALSE;
+            if (value >>> 1 != myGeneration) {
+                return null;
             }
-
-            // No value found
-            return null;
+            return (value & 1) != 0 ? Boolean.TRUE : Boolean.FALSE;
         }
 
         /**
@@ -191,45 +427,110 @@ class SearchableString {
          * @param flag The actual value
          */
         void set(final int index, final boolean flag) {
+            myValues[index] = myGeneration << 1 | (flag ? 1 : 0);
+        }
 
-            // Store the value
-            myValues.set(index, flag);
-
-            // Store the fact the value has been stored
-            myIsKnown.set(index, true);
+        /**
+         * Removes all values from the cache.
+         */
+        void clear() {
+            myGeneration++;
+            if (myGeneration > MAX_GENERATION) {
+                Arrays.fill(myValues, 0);
+                myGeneration = 1;
+            }
         }
     }
 }
 
 /**
- * This combines a String value with a unique int value. The int value is used for caching of results.
+ * This combines a String value with a unique int value. The int value is used for caching of results and is unique
+ * within the {@link LiteralRegistry} of a rule set. The value is stored as Latin-1 bytes, in which the characters that
+ * aren't Latin-1 are substituted. A literal with such characters, or with the substitute itself, can't be compared as
+ * bytes, so it also keeps its characters.
  */
 class Literal {
 
-    // Keep track of the total number of instances
-    private static final AtomicInteger NUMBER_OF_INSTANCES = new AtomicInteger();
+    /** The byte of the characters which aren't Latin-1, the ASCII substitute character. */
+    static final byte SUBSTITUTE = 0x1a;
+
+    // The Latin-1 data, a range of an array which may be shared with other literals
+    private byte[] myBytes;
+    private int myOffset;
+    private final int myLength;
 
-    // The actual string data
-    private final char[] myCharacters;
+    // The characters if the value can't be compared as bytes, otherwise null
+    private final char[] myWideChars;
 
     // The unique index for this instance
     private final int myIndex;
 
+    // The signature of the bigrams
+    private final long myLowSignature;
+    private final long myHighSignature;
+
     /**
      * Creates a new instance with the specified non-empty value.
      * @param value The String value
+     * @param index The unique index within the rule set
      */
-    Literal(final String value) {
-        myCharacters = value.toCharArray();
-        myIndex = NUMBER_OF_INSTANCES.getAndAdd(1);
+    Literal(final String value, final int index) {
+        myLength = value.length();
+        myBytes = new byte[myLength];
+        boolean isWide = false;
+        for (int i = 0; i < myLength; i++) {
+            final char c = value.charAt(i);
+            myBytes[i] = toByte(c);
+            isWide |= c > 0xff || c == SUBSTITUTE;
+        }
+        myWideChars = isWide ? value.toCharArray() : null;
+        myIndex = index;
+        myLowSignature = BigramSignature.getLiteralWord(myBytes, false);
+        myHighSignature = BigramSignature.getLiteralWord(myBytes, true);
     }
 
     /**
-     * Returns the first character for quick checks.
-     * @return the first character
+     * Returns the byte of a character in a value.
+     * @param c The character
+     * @return the Latin-1 byte, or {@link #SUBSTITUTE} if the character isn't Latin-1
      */
-    char getFirstChar() {
-        return myCharacters[0];
+    static byte toByte(final char c) {
+        return c <= 0xff ? (byte) c : SUBSTITUTE;
+    }
+
+    /**
+     * Returns the low word of the bigram signature.
+     * @return bits 0 to 63 of the signature
+     * @see BigramSignature
+     */
+    long getLowSignature() {
+        return myLowSignature;
+    }
+
+    /**
+     * Returns the high word of the bigram signature.
+     * @return bits 64 to 127 of the signature
+     * @see BigramSignature
+     */
+    long getHighSignature() {
+        return myHighSignature;
+    }
+
+    /**
+     * Indicates whether this instance has to be compared with {@link #matches(SearchableString, int)}, because it has
+     * characters which aren't Latin-1 or the substitute.
+     * @return <code>true</code> if the bytes can't be compared, <code>false</code> otherwise
+     */
+    boolean isWide() {
+        return myWideChars != null;
+    }
+
+    /**
+     * Returns the first byte for quick checks.
+     * @return the first byte
+     */
+    byte getFirstByte() {
+        return myBytes[myOffset];
     }
 
     /**
@@ -237,48 +538,147 @@ class Literal {
      * @return The size of this instance
      */
     int getLength() {
-        return myCharacters.length;
+        return myLength;
+    }
+
+    /**
+     * Returns the character at the specified index.
+     * @param index The index, smaller than the length
+     * @return The character
+     */
+    char charAt(final int index) {
+        return myWideChars != null ? myWideChars[index] : (char) (myBytes[myOffset + index] & 0xff);
+    }
+
+    /**
+     * Returns a copy of the bytes.
+     * @return the Latin-1 bytes
+     */
+    byte[] getBytes() {
+        return Arrays.copyOfRange(myBytes, myOffset, myOffset + myLength);
+    }
+
+    /**
+     * Checks whether the value represents a complete substring from the from index. This instance shouldn't be wide.
+     * @param from The start index of the potential substring
+     * @return <code>true</code> If the arguments represent a valid substring, <code>false</code> otherwise.
+     */
+    boolean matches(final byte[] value, final int from) {
+        return matches(value, value.length, from);
     }
 
     /**
-     * Checks whether the value represents a complete substring from the from index.
+     * Checks whether the first size bytes of the value represent a complete substring from the from index. This
+     * instance shouldn't be wide.
+     * @param size The number of valid bytes in the value
      * @param from The start index of the potential substring
      * @return <code>true</code> If the arguments represent a valid substring, <code>false</code> otherwise.
      */
-    boolean matches(final char[] value, final int from) {
+    boolean matches(final byte[] value, final int size, final int from) {
 
         // Check the bounds
-        final int len = myCharacters.length;
-        if (len + from > value.length || from < 0) {
+        final int len = myLength;
+        if (len + from > size || from < 0) {
             return false;
         }
 
-        // Bounds are ok, check all characters.
+        // Bounds are ok, check all bytes.
         // Allow question marks to match any character
-        for (int i = 0; i < len; i++) {
-            if (myCharacters[i] != value[i + from] && myCharacters[i] != '?') {
+        return ByteSearch.matches(myBytes, myOffset, value, from, len);
+    }
+
+    /**
+     * Checks whether the characters of the value from the from index start with this instance, comparing characters
+     * instead of bytes.
+     * @param value The value
+     * @param from The start index of the potential substring
+     * @return <code>true</code> If the arguments represent a valid substring, <code>false</code> otherwise.
+     */
+    boolean matches(final SearchableString value, final int from) {
+        if (myLength + from > value.getSize() || from < 0) {
+            return false;
+        }
+        for (int i = 0; i < myLength; i++) {
+            final char c = charAt(i);
+            if (c != value.charAt(i + from) && c != '?') {
                 return false;
             }
         }
+        return true;
+    }
+
+    /**
+     * Tests whether the characters of this instance contain the specified value. Question marks are compared as
+     * ordinary characters.
+     * @param value The value to search for
+     * @return <code>true</code> if this instance contains the value, <code>false</code> otherwise
+     */
+    boolean contains(final String value) {
+        final int last = myLength - value.length();
+        for (int from = 0; from <= last; from++) {
+            if (regionEquals(from, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether the characters of this instance start with the specified value. Question marks are compared as
+     * ordinary characters.
+     * @param value The value to compare with
+     * @return <code>true</code> if this instance starts with the value, <code>false</code> otherwise
+     */
+    boolean startsWith(final String value) {
+        return value.length() <= myLength && regionEquals(0, value);
+    }
 
-        // All characters match
+    /**
+     * Tests whether the characters of the value from the from index start with this instance. Question marks are
+     * compared as ordinary characters.
+     * @param value The value
+     * @param from The start index in the value
+     * @return <code>true</code> if this instance occurs at the index, <code>false</code> otherwise
+     */
+    boolean occursAt(final String value, final int from) {
+        if (from + myLength > value.length()) {
+            return false;
+        }
+        for (int i = 0; i < myLength; i++) {
+            if (charAt(i) != value.charAt(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionEquals(final int from, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (charAt(from + i) != value.charAt(i)) {
+                return false;
+            }
+        }
         return true;
     }
 
     /**
-     * Returns the unique index of this instance.
-     * @return the unique index of this instance.
+     * Copies the bytes to a range of a shared array, which replaces the own array of this instance. This should be
+     * done before the instance is used by other threads.
+     * @param bytes The shared array
+     * @param offset The start of the range
      */
-    final int getIndex() {
-        return myIndex;
+    void moveTo(final byte[] bytes, final int offset) {
+        System.arraycopy(myBytes, myOffset, bytes, offset, myLength);
+        myBytes = bytes;
+        myOffset = offset;
     }
 
     /**
-     * Returns the total number of literals.
-     * @return the total number of literals.
+     * Returns the unique index of this instance.
+     * @return the unique index of this instance.
      */
-    static int getNumberOfInstances() {
-        return NUMBER_OF_INSTANCES.get();
+    final int getIndex() {
+        return myIndex;
     }
 
     /**
@@ -286,6 +686,7 @@ class Literal {
      */
     @Override
     public String toString() {
-        return new String(myCharacters);
+        return myWideChars != null ? new String(myWideChars)
+                : new String(myBytes, myOffset, myLength, StandardCharsets.ISO_8859_1);
     }
 }
@@ -3,62 +3,153 @@ package com.blueconic.browscap.impl;
 import static java.util.Collections.singleton;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
 
 import com.blueconic.browscap.Capabilities;
 import com.blueconic.browscap.ParseException;
 import com.blueconic.browscap.UserAgentParser;
-import com.opencsv.CSVReader;
 
 /**
  * This class is responsible for parsing rules and creating the efficient java representation.
  */
 public class UserAgentFileParser {
 
-    // The default match all pattern
-    private static final Rule WILDCARD = new Rule(null, new Literal[0], null, "*", CapabilitiesImpl.DEFAULT);
+    // The columns of the CSV file which are used
+    private static final int[] COLUMNS = {0, 4, 5, 6, 11, 13, 14, 17, 41, 42, 43, 45, 46};
 
-    // Mapping substrings to unique literal for caching of lookups
-    private final Map<String, Literal> myUniqueLiterals = new TreeMap<>();
+    // The pattern of the record which matches all useragents
+    private static final String MATCH_ALL = "*";
+
+    // Consecutive wildcards in a pattern
+    private static final Pattern WILDCARDS = Pattern.compile("\\*+");
+
+    // The number of records which are converted to rules by a single task
+    private static final int CHUNK_SIZE = 4096;
+
+    // The number of characters which are encoded at once when parsing a reader
+    private static final int READER_BUFFER_SIZE = 1 << 14;
+
+    // Mapping substrings to unique literal for caching of lookups, scoped to the rule set being parsed
+    private LiteralRegistry myUniqueLiterals = new LiteralRegistry();
+
+    // The unique values of the capabilities, scoped to the rule set being parsed
+    private ValueDictionary myValues = new ValueDictionary();
+
+    // Mapping the capabilities to the first equal instance, so rules with equal properties share a single instance,
+    // while parsing
+    private ConcurrentMap<CapabilitiesImpl, CapabilitiesImpl> myUniqueCapabilities = new ConcurrentHashMap<>();
 
     /**
-     * Parses a csv stream of rules.
+     * Parses a csv stream of rules. The characters are encoded as UTF-8 and read by the same tokenizer as
+     * {@link #parse(InputStream)}. The reader is closed afterwards.
+     * @param input The reader
+     * @return a UserAgentParser based on the read rules
+     * @throws IOException If reading the stream failed.
+     * @throws ParseException
+     */
+    public UserAgentParser parse(final Reader input) throws IOException, ParseException {
+        try (final InputStream in = new ReaderInputStream(input, READER_BUFFER_SIZE)) {
+            return parse(in);
+        }
+    }
+
+    /**
+     * Parses a UTF-8 encoded csv stream of rules.
      * @param input The input stream
      * @return a UserAgentParser based on the read rules
      * @throws IOException If reading the stream failed.
      * @throws ParseException
      */
-    public synchronized UserAgentParser parse(final Reader input) throws IOException, ParseException {
+    public synchronized UserAgentParser parse(final InputStream input) throws IOException, ParseException {
+
+        myUniqueLiterals = new LiteralRegistry();
+        myValues = new ValueDictionary();
+        myUniqueCapabilities = new ConcurrentHashMap<>();
+
+        // Read the records in chunks, which are converted to rules in parallel while reading continues
+        final List<ForkJoinTask<List<Rule>>> tasks = new ArrayList<>();
+        try {
+            final CsvTokenizer tokenizer = new CsvTokenizer(input, COLUMNS);
+            List<String[]> chunk = new ArrayList<>(CHUNK_SIZE);
+            String[] record = new String[COLUMNS[COLUMNS.length - 1] + 1];
+            int numberOfFields;
+            while ((numberOfFields = tokenizer.next(record)) >= 0) {
+                if (numberOfFields > 47) {
+                    chunk.add(record);
+                    record = new String[record.length];
+                    if (chunk.size() == CHUNK_SIZE) {
+                        tasks.add(submit(chunk));
+                        chunk = new ArrayList<>(CHUNK_SIZE);
+                    }
+                }
+            }
+            tasks.add(submit(chunk));
+
+            // Join the chunks in order, so the rules are independent of the scheduling
+            final List<Rule> rules = new ArrayList<>();
+            for (final ForkJoinTask<List<Rule>> task : tasks) {
+                rules.addAll(join(task));
+            }
+            return new UserAgentParserImpl(rules.toArray(new Rule[0]), myUniqueLiterals, myValues);
+
+        } finally {
+            for (final ForkJoinTask<List<Rule>> task : tasks) {
+                task.cancel(false);
+            }
 
-        final List<Rule> rules = new ArrayList<>();
-        try (final CSVReader csvReader = new CSVReader(input)) {
-            final Iterator<String[]> iterator = csvReader.iterator();
+            // The rules refer to the unique values, so the mapping isn't needed anymore
+            myUniqueCapabilities = new ConcurrentHashMap<>();
+        }
+    }
 
-            while (iterator.hasNext()) {
-                final String[] record = iterator.next();
+    private ForkJoinTask<List<Rule>> submit(final List<String[]> records) {
+        return ForkJoinPool.commonPool().submit(() -> {
+            final List<Rule> rules = new ArrayList<>(records.size());
+            for (final String[] record : records) {
                 final Rule rule = getRule(record);
                 if (rule != null) {
                     rules.add(rule);
                 }
             }
-        }
+            return rules;
+        });
+    }
 
-        return new UserAgentParserImpl(rules.toArray(new Rule[0]));
+    private static List<Rule> join(final ForkJoinTask<List<Rule>> task) throws ParseException {
+        try {
+            return task.get();
+        } catch (final ExecutionException e) {
+            // Checked exceptions are wrapped by the task, and possibly again when rethrown in this thread
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof ParseException) {
+                    throw (ParseException) cause;
+                }
+            }
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
     }
 
     private Rule getRule(final String[] record) throws ParseException {
-        if (record.length <= 47) {
-            return null;
-        }
 
         // Normalize: lowercase and remove duplicate wildcards
-        final String pattern = record[0].toLowerCase().replaceAll("\\*+", "*");
+        final String pattern = WILDCARDS.matcher(record[0].toLowerCase()).replaceAll("*");
         // Skip header and default values rows
         if (pattern.equals("PropertyName") || pattern.equals("DefaultProperties")) {
             return null;
@@ -66,7 +157,6 @@ public class UserAgentFileParser {
 
         try {
 
-            final String regex = toRegex(record[0]);
             final String comment = getValue(record[4]);
             final String browser = getValue(record[5]);
             final String browserType = getValue(record[6]);
@@ -79,8 +169,14 @@ public class UserAgentFileParser {
             final String deviceType = getValue(record[43]);
             final String deviceCodeName = getValue(record[45]);
             final String deviceBrandName = getValue(record[46]);
-            final Capabilities capabilities =
-                    new CapabilitiesImpl(regex,
+            if (MATCH_ALL.equals(pattern)) {
+                // The other properties of the match all record are placeholders, e.g. version 0
+                final String unknown = Capabilities.UNKNOWN_BROWSCAP_VALUE;
+                return createRule(pattern, getCapabilities(new CapabilitiesImpl(myValues, browser, unknown, unknown,
+                        unknown, unknown, unknown, unknown, unknown, unknown, unknown, unknown, unknown)));
+            }
+            final Capabilities capabilities = getCapabilities(
+                    new CapabilitiesImpl(myValues,
                                          browser,
                                          browserType,
                                          browserMajorVersion,
@@ -92,12 +188,12 @@ public class UserAgentFileParser {
                                          deviceCodeName,
                                          platformMaker,
                                          deviceMaker,
-                                         deviceBrandName);
+                                         deviceBrandName));
 
             final Rule rule = createRule(pattern, capabilities);
 
             // Check reconstructing the pattern
-            if (!pattern.equals(rule.getPattern())) {
+            if (!rule.hasPattern(pattern)) {
                 throw new ParseException("Unable to parse " + pattern);
             }
             return rule;
@@ -114,8 +210,22 @@ public class UserAgentFileParser {
         return Capabilities.UNKNOWN_BROWSCAP_VALUE;
     }
 
+    // Returns the first equal instance of the capabilities
+    Capabilities getCapabilities(final CapabilitiesImpl capabilities) {
+        final CapabilitiesImpl existing = myUniqueCapabilities.putIfAbsent(capabilities, capabilities);
+        return existing == null ? capabilities : existing;
+    }
+
     Literal getLiteral(final String value) {
-        return myUniqueLiterals.computeIfAbsent(value, Literal::new);
+        return myUniqueLiterals.getLiteral(value);
+    }
+
+    LiteralRegistry getLiterals() {
+        return myUniqueLiterals;
+    }
+
+    ValueDictionary getValueDictionary() {
+        return myValues;
     }
 
     Rule createRule(final String pattern, final Capabilities capabilities) {
@@ -127,8 +237,8 @@ public class UserAgentFileParser {
 
         final String first = parts.get(0);
         if (parts.size() == 1) {
-            if ("*".equals(first)) {
-                return WILDCARD;
+            if (MATCH_ALL.equals(first)) {
+                return new Rule(null, new Literal[0], null, pattern, capabilities);
             }
             return new Rule(getLiteral(first), null, null, pattern, capabilities);
         }
@@ -1,12 +1,10 @@
 package com.blueconic.browscap.impl;
 
-import static java.util.Arrays.asList;
-
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Comparator;
-import java.util.List;
-import java.util.function.Predicate;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import com.blueconic.browscap.Capabilities;
 import com.blueconic.browscap.UserAgentParser;
@@ -17,42 +15,91 @@ import com.blueconic.browscap.UserAgentParser;
  */
 class UserAgentParserImpl implements UserAgentParser {
 
-    // Common substrings to filter irrelevant rules and speed up processing
-    static final String[] COMMON = {"-", "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "profile", "player",
-            "compatible", "android", "google", "tab", "transformer", "lenovo", "micro", "edge", "safari", "opera",
-            "chrome", "firefox", "msie", "chromium", "cpu os ", "cpu iphone os ", "windows nt ", "mac os x ", "linux",
-            "bsd", "windows phone", "iphone", "pad", "blackberry", "nokia", "alcatel", "ucbrowser", "mobile", "ie",
-            "mercury", "samsung", "browser", "wow64", "silk", "lunascape", "crios", "epiphany", "konqueror", "version",
-            "rv:", "build", "bot", "like gecko", "applewebkit", "trident", "mozilla", "windows nt 4", "windows nt 5.0",
-            "windows nt 5.1", "windows nt 5.2", "windows nt 6.0", "windows nt 6.1", "windows nt 6.2", "windows nt 6.3",
-            "windows nt 10.0", "android?4.0", "android?4.1", "android?4.2", "android?4.3", "android?4.4", "android?2.3",
-    "android?5"};
-
-    // Common prefixes to filter irrelevant rules and speed up processing
-    static final String[] FILTER_PREFIXES = {"mozilla/5.0", "mozilla/4"};
+    // The number of 64 bit words of the rule sets which are combined at once, aligned with the compressed masks
+    static final int BLOCK_WORDS = CompressedBitmap.CONTAINER_WORDS;
 
-    // All useragent rule ordered by size and alphabetically
-    private final Rule[] myRules;
+    // All useragent rule ordered by size and alphabetically, as a compact table
+    private final RuleTable myRules;
 
     // Filters for filtering irrelevant rules and speed up processing
     private final Filter[] myFilters;
 
+    // The unique literals of the rules and filters
+    private final LiteralRegistry myLiterals;
+
+    // The unique values of the capabilities of the rules
+    private final ValueDictionary myValues;
+
+    // Automaton for finding all literals of the rules and filters in a single scan
+    private final LiteralAutomaton myAutomaton;
+
+    // Tries of the prefixes and the postfixes of the rules
+    private final AnchorIndex myPrefixes;
+    private final AnchorIndex myPostfixes;
+
+    // Index of the rules which only match a useragent equal to their pattern
+    private final ExactRuleIndex myExactRules;
+
+    // Index of the rules which are too long for short useragents
+    private final LengthIndex myLengths;
+
+    // Reusable match state per thread and parser, which is dropped with the parser, e.g. after a reload
+    private static final ThreadLocal<Map<UserAgentParserImpl, MatchContext>> CONTEXTS =
+            ThreadLocal.withInitial(WeakHashMap::new);
+
     /**
      * Creates a new parser based on a collection of rules.
      * @param rules The rules, ordered by priority
+     * @param literals The registry of the literals used by the rules, which is extended with the filter literals
+     * @param values The dictionary of the values of the capabilities of the rules
      */
-    UserAgentParserImpl(final Rule[] rules) {
-        myRules = getOrderedRules(rules);
-        myFilters = buildFilters();
+    UserAgentParserImpl(final Rule[] rules, final LiteralRegistry literals, final ValueDictionary values) {
+        myLiterals = literals;
+        myValues = values;
+        final Rule[] orderedRules = getOrderedRules(rules);
+        myAutomaton = new LiteralAutomaton(myLiterals.getLiterals());
+        myFilters = buildFilters(orderedRules);
+        myPrefixes = AnchorIndex.forPrefixes(orderedRules);
+        myPostfixes = AnchorIndex.forPostfixes(orderedRules);
+        myExactRules = new ExactRuleIndex(orderedRules);
+        myLengths = new LengthIndex(orderedRules);
+        myRules = new RuleTable(orderedRules, myLiterals.getLiteralsByIndex());
+        myLiterals.compact();
     }
 
     /**
-     *
-     *  {@inheritDoc}
+     * Creates a new parser based on prebuilt data structures, e.g. read from a snapshot.
+     * @param rules The table of the rules, ordered by priority
+     * @param literals The registry of the literals used by the rules and filters
+     * @param values The dictionary of the values of the capabilities of the rules
+     * @param filters The filters for the ordered rules
+     * @param automaton The automaton for all literals of the registry
+     * @param prefixes The trie of the prefixes of the ordered rules
+     * @param postfixes The trie of the postfixes of the ordered rules
+     * @param exactRules The index of the ordered rules without wildcards
+     * @param lengths The index of the minimum lengths of the ordered rules
+     */
+    UserAgentParserImpl(final RuleTable rules, final LiteralRegistry literals, final ValueDictionary values,
+            final Filter[] filters, final LiteralAutomaton automaton, final AnchorIndex prefixes,
+            final AnchorIndex postfixes, final ExactRuleIndex exactRules, final LengthIndex lengths) {
+        myRules = rules;
+        myLiterals = literals;
+        myValues = values;
+        myFilters = filters;
+        myAutomaton = automaton;
+        myPrefixes = prefixes;
+        myPostfixes = postfixes;
+        myExactRules = exactRules;
+        myLengths = lengths;
+        myLiterals.compact();
+    }
+
+    /**
+     * {@inheritDoc} The rules are stored as a compact table, so they are created on each call.
      */
     @Override
     public Rule[] getRules() {
-        return myRules;
+        return myRules.getRules();
     }
 
     /**
@@ -60,110 +107,232 @@ class UserAgentParserImpl implements UserAgentParser {
      */
     @Override
     public Capabilities parse(final String userAgent) {
+        final int rule = findRule(userAgent);
+        return rule >= 0 ? myRules.getCapabilities(rule) : CapabilitiesImpl.DEFAULT;
+    }
 
-        final SearchableString searchString = new SearchableString(userAgent.toLowerCase());
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getPattern(final String userAgent) {
+        final int rule = findRule(userAgent);
+        if (rule < 0) {
+            return Capabilities.UNKNOWN_BROWSCAP_VALUE;
+        }
+        return UserAgentFileParser.toRegex(myRules.getRule(rule).getPattern());
+    }
 
-        final BitSet includes = getIncludeRules(searchString, myFilters);
+    // Returns the index of the best matching rule, or -1 if no rule matches
+    private int findRule(final String userAgent) {
+
+        final MatchContext context = getContext();
+        final SearchableString searchString = context.getSearchString(userAgent);
+
+        // Only rules with a matching prefix and postfix can match
+        final CandidateSet prefixed = myPrefixes.getCandidates(searchString, context.getPrefixCandidates());
+        final CandidateSet postfixed = myPostfixes.getCandidates(searchString, context.getPostfixCandidates());
+
+        // Only rules with a higher priority than the exactly matching rule have to be checked
+        final int exact = myExactRules.find(searchString);
+        final int limit = exact >= 0 ? exact : myRules.size();
+
+        // Skip the rules which are too long for the useragent
+        final int firstWord = myLengths.getFirstWord(searchString.getSize());
+
+        // Determine the candidates per block of rules, so no work is done for the blocks after the first match
+        final long[] block = context.getBlock();
+        final long[] postfixBlock = context.getPostfixBlock();
+        final int numberOfWords = CandidateSet.getNumberOfWords(limit);
+        for (int from = firstWord - firstWord % BLOCK_WORDS; from < numberOfWords; from += BLOCK_WORDS) {
+            final int length = Math.min(BLOCK_WORDS, numberOfWords - from);
+            prefixed.getWords(from, block, length);
+            postfixed.getWords(from, postfixBlock, length);
+            for (int i = 0; i < length; i++) {
+                block[i] &= from + i < firstWord ? 0 : postfixBlock[i];
+            }
+            myExactRules.excludeRules(block, from, length);
+            if (from + length == numberOfWords && (limit & 63) != 0) {
+                block[length - 1] &= (1L << limit) - 1;
+            }
 
-        for (int i = includes.nextSetBit(0); i >= 0; i = includes.nextSetBit(i + 1)) {
-            final Rule rule = myRules[i];
-            if (rule.matches(searchString)) {
-                return rule.getCapabilities();
+            if (!applyFilters(searchString, myFilters, block, from, length)) {
+                continue;
+            }
+            for (int i = 0; i < length; i++) {
+                for (long rules = block[i]; rules != 0; rules &= rules - 1) {
+                    final int rule = ((from + i) << 6) + Long.numberOfTrailingZeros(rules);
+                    if (myRules.matchesCandidate(rule, searchString)) {
+                        return rule;
+                    }
+                }
             }
         }
 
-        return CapabilitiesImpl.DEFAULT;
+        return exact;
     }
 
-    BitSet getIncludeRules(final SearchableString searchString, final Filter[] filters) {
+    LiteralRegistry getLiterals() {
+        return myLiterals;
+    }
 
-        final BitSet excludes = new BitSet(myRules.length);
-        for (final Filter filter : filters) {
-            filter.applyExcludes(searchString, excludes);
-        }
+    ValueDictionary getValueDictionary() {
+        return myValues;
+    }
 
-        // Convert flip the excludes to determine the includes
-        final BitSet includes = excludes;
-        includes.flip(0, myRules.length);
-        return includes;
+    Filter[] getFilters() {
+        return myFilters;
     }
 
-    // Sort by size and alphabet, so the first match can be returned immediately
-    static Rule[] getOrderedRules(final Rule[] rules) {
-        final Comparator<Rule> c = Comparator.comparing(Rule::getSize).reversed().thenComparing(Rule::getPattern);
+    LiteralAutomaton getAutomaton() {
+        return myAutomaton;
+    }
+
+    RuleTable getRuleTable() {
+        return myRules;
+    }
 
-        final List<Rule> orderedRules = new ArrayList<>(asList(rules));
-        orderedRules.sort(c);
-        return orderedRules.toArray(new Rule[0]);
+    AnchorIndex getPrefixes() {
+        return myPrefixes;
     }
 
-    Filter[] buildFilters() {
+    AnchorIndex getPostfixes() {
+        return myPostfixes;
+    }
 
-        final List<Filter> result = new ArrayList<>();
+    ExactRuleIndex getExactRules() {
+        return myExactRules;
+    }
 
-        // Build filters for specific prefix constraints
-        for (final String pattern : FILTER_PREFIXES) {
-            result.add(createPrefixFilter(pattern));
+    LengthIndex getLengths() {
+        return myLengths;
+    }
+
+    // The context of this parser for the current thread
+    MatchContext getContext() {
+        final Map<UserAgentParserImpl, MatchContext> contexts = CONTEXTS.get();
+        MatchContext context = contexts.get(this);
+        if (context == null) {
+            context = new MatchContext(myLiterals.size(), myAutomaton, myRules.size());
+            contexts.put(this, context);
         }
+        return context;
+    }
 
-        // Build filters for specific contains constraints
-        for (final String pattern : COMMON) {
-            result.add(createContainsFilter(pattern));
+    // Remove the rules of a block which can't match because of the filters, returns whether any rules are left
+    private static boolean applyFilters(final SearchableString searchString, final Filter[] filters,
+            final long[] block, final int from, final int length) {
+        boolean remaining = hasRules(block, length);
+
+        // A filter is only evaluated if there are rules left to exclude
+        for (int i = 0; i < filters.length && remaining; i++) {
+            if (!filters[i].matches(searchString) && filters[i].excludeRules(block, from, length)) {
+                remaining = hasRules(block, length);
+            }
         }
+        return remaining;
+    }
 
-        return result.toArray(new Filter[0]);
+    private static boolean hasRules(final long[] block, final int length) {
+        long rules = 0;
+        for (int i = 0; i < length; i++) {
+            rules |= block[i];
+        }
+        return rules != 0;
     }
 
-    Filter createContainsFilter(final String pattern) {
-        final Literal literal = new Literal(pattern);
+    // Sort by size and alphabet, so the first match can be returned immediately
+    static Rule[] getOrderedRules(final Rule[] rules) {
+
+        // Reconstruct the patterns once instead of on each comparison
+        final SortKey[] keys = new SortKey[rules.length];
+        Arrays.parallelSetAll(keys, i -> new SortKey(rules[i]));
+
+        final Comparator<SortKey> c =
+                Comparator.comparingInt(SortKey::getSize).reversed().thenComparing(SortKey::getPattern);
+        Arrays.parallelSort(keys, c);
 
-        final Predicate<SearchableString> pred = c -> c.getIndices(literal).length > 0;
+        final Rule[] orderedRules = new Rule[rules.length];
+        Arrays.parallelSetAll(orderedRules, i -> keys[i].getRule());
+        return orderedRules;
+    }
 
-        final Predicate<Rule> matches = rule -> rule.requires(pattern);
+    Filter[] buildFilters(final Rule[] orderedRules) {
 
-        return new Filter(pred, matches);
+        // Choose the contains filters based on the literals of the rules, the anchors are handled by the indices
+        return new FilterMiner(orderedRules, myLiterals.getLiteralsByIndex(), myAutomaton)
+                .mine(FilterMiner.MAX_FILTERS);
     }
 
-    Filter createPrefixFilter(final String pattern) {
-        final Literal literal = new Literal(pattern);
+    /**
+     * Sort key of a rule, with the reconstructed pattern.
+     */
+    private static class SortKey {
+
+        private final Rule myRule;
+        private final String myPattern;
 
-        final Predicate<SearchableString> pred = s -> s.startsWith(literal);
+        SortKey(final Rule rule) {
+            myRule = rule;
+            myPattern = rule.getPattern();
+        }
 
-        final Predicate<Rule> matches = rule -> {
-            final Literal prefix = rule.getPrefix();
-            return prefix != null && prefix.toString().startsWith(pattern);
-        };
+        Rule getRule() {
+            return myRule;
+        }
 
-        return new Filter(pred, matches);
+        int getSize() {
+            return myRule.getSize();
+        }
+
+        String getPattern() {
+            return myPattern;
+        }
     }
 
     /**
-     * Filter expression to can exclude a number of rules if a useragent doesn't meet it's predicate.
+     * Filter expression to can exclude a number of rules if a useragent doesn't meet it's predicate. The useragent
+     * predicate is either a prefix or a contains check for a literal.
      */
-    class Filter {
+    static class Filter {
 
-        private final Predicate<SearchableString> myUserAgentPredicate;
-        private final BitSet myMask;
+        private final Literal myLiteral;
+        private final boolean myIsPrefix;
+
+        private final CompressedBitmap myMask;
 
         /**
          * Creates a the filter.
-         * @param userAgentPredicate The predicate for matching user agents.
-         * @param patternPredicate The corresponding predicate for matching rule
+         * @param literal The literal the user agent should contain or start with
+         * @param isPrefix <code>true</code> if the user agent should start with the literal, <code>false</code> if
+         *            it should contain it
+         * @param mask The rules which can't match if the user agent doesn't meet the predicate
          */
-        Filter(final Predicate<SearchableString> userAgentPredicate, final Predicate<Rule> patternPredicate) {
-            myUserAgentPredicate = userAgentPredicate;
-            myMask = new BitSet(myRules.length);
-            for (int i = 0; i < myRules.length; i++) {
-                if (patternPredicate.test(myRules[i])) {
-                    myMask.set(i);
-                }
-            }
+        Filter(final Literal literal, final boolean isPrefix, final BitSet mask) {
+            myLiteral = literal;
+            myIsPrefix = isPrefix;
+            myMask = new CompressedBitmap(mask);
         }
 
-        void applyExcludes(final SearchableString userAgent, final BitSet resultExcludes) {
-            if (!myUserAgentPredicate.test(userAgent)) {
-                resultExcludes.or(myMask);
-            }
+        Literal getLiteral() {
+            return myLiteral;
+        }
+
+        boolean isPrefix() {
+            return myIsPrefix;
+        }
+
+        BitSet getMask() {
+            return myMask.toBitSet();
+        }
+
+        // Remove the rules of the mask from a block of rules, returns whether the mask has rules in the block
+        boolean excludeRules(final long[] block, final int from, final int length) {
+            return myMask.removeFrom(block, from, length);
+        }
+
+        boolean matches(final SearchableString userAgent) {
+            return myIsPrefix ? userAgent.startsWith(myLiteral) : userAgent.contains(myLiteral);
         }
     }
 }
@@ -0,0 +1,120 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.Capabilities.UNKNOWN_BROWSCAP_VALUE;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.blueconic.browscap.BrowsCapField;
+
+/**
+ * Dictionary of the unique values of the fields of a single rule set. Each value gets a code which is unique per field
+ * within the dictionary, so the capabilities store small codes instead of references. The values of the default
+ * capabilities get the first codes, so their codes are the same in each dictionary; the unknown value has code 0. The
+ * dictionary is thread safe, so capabilities can be created in parallel.
+ */
+class ValueDictionary {
+
+    // The values per field, by the ordinal of the field
+    private final FieldValues[] myFields;
+
+    /**
+     * Creates a new dictionary, which already contains the values of the default capabilities.
+     */
+    ValueDictionary() {
+        myFields = new FieldValues[BrowsCapField.values().length];
+        for (int i = 0; i < myFields.length; i++) {
+            myFields[i] = new FieldValues();
+            myFields[i].getCode(UNKNOWN_BROWSCAP_VALUE);
+        }
+    }
+
+    /**
+     * Returns the code of a value of a field, adding the value if needed.
+     * @param field The field
+     * @param value The value
+     * @return the code of the value
+     */
+    int getCode(final BrowsCapField field, final String value) {
+        return myFields[field.ordinal()].getCode(value);
+    }
+
+    /**
+     * Returns the value of a field with the specified code.
+     * @param field The field
+     * @param code The code, as returned by {@link #getCode(BrowsCapField, String)}
+     * @return the value
+     */
+    String getValue(final BrowsCapField field, final int code) {
+        return myFields[field.ordinal()].myValues[code];
+    }
+
+    /**
+     * Returns the number of values of a field.
+     * @param field The field
+     * @return the number of values, which is larger than all codes of the field
+     */
+    int size(final BrowsCapField field) {
+        return myFields[field.ordinal()].mySize;
+    }
+
+    /**
+     * Returns the values of a field. The list is a view, which is the same instance on each call, so lists of different
+     * dictionaries can be told apart by identity.
+     * @param field The field
+     * @return an unmodifiable list of the values, indexed by their code
+     */
+    List<String> getValues(final BrowsCapField field) {
+        return myFields[field.ordinal()];
+    }
+
+    // The values of a field, which can be read as a list without locking
+    private static final class FieldValues extends AbstractList<String> implements RandomAccess {
+
+        // Mapping the values to their codes, which can be looked up without locking
+        private final ConcurrentMap<String, Integer> myCodes = new ConcurrentHashMap<>();
+
+        // The values by code, which is replaced when it grows
+        private volatile String[] myValues = new String[16];
+        private volatile int mySize;
+
+        @Override
+        public String get(final int index) {
+            // Read the size before the values, which are published first
+            if (index < 0 || index >= mySize) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mySize);
+            }
+            return myValues[index];
+        }
+
+        @Override
+        public int size() {
+            return mySize;
+        }
+
+        private int getCode(final String value) {
+            final Integer code = myCodes.get(value);
+            return code != null ? code : addValue(value);
+        }
+
+        private synchronized int addValue(final String value) {
+            final Integer existing = myCodes.get(value);
+            if (existing != null) {
+                return existing;
+            }
+
+            // Publish the value before its code, so a code always refers to a value
+            final int code = mySize;
+            final String[] values = code < myValues.length ? myValues : Arrays.copyOf(myValues, code * 2);
+            values[code] = value;
+            myValues = values;
+            mySize = code + 1;
+            myCodes.put(value, code);
+            return code;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.blueconic.browscap.impl;
+
+/**
+ * The inner loops of searching and comparing literals in the bytes of a useragent. This is the version for Java 17 and
+ * higher, which uses the Vector API if the incubator module has been added to the JVM, e.g. with
+ * <code>--add-modules jdk.incubator.vector</code>. Otherwise the plain loops of the Java 8 version are used.
+ */
+final class ByteSearch {
+
+    // Whether the vector loops can be used, so they're only loaded if the module is available
+    private static final boolean VECTORIZED = isVectorApiAvailable();
+
+    private ByteSearch() {
+    }
+
+    private static boolean isVectorApiAvailable() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            return VectorByteSearch.isSupported();
+        } catch (final LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Finds the first index of a byte in a range of a value.
+     * @param value The value
+     * @param b The byte to search for
+     * @param from The first index of the range
+     * @param to The end of the range, exclusive
+     * @return the index, or -1 if the byte doesn't occur in the range
+     */
+    static int indexOf(final byte[] value, final byte b, final int from, final int to) {
+        if (VECTORIZED && to - from >= VectorByteSearch.MIN_LENGTH) {
+            return VectorByteSearch.indexOf(value, b, from, to);
+        }
+        for (int i = from; i < to; i++) {
+            if (value[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the bytes of a pattern with a range of a value, in which question marks of the pattern match any byte.
+     * The bounds should already be checked.
+     * @param pattern The bytes of the pattern
+     * @param offset The index of the first byte of the pattern
+     * @param value The value
+     * @param from The index of the first byte of the range of the value
+     * @param length The number of bytes to compare
+     * @return <code>true</code> if all bytes match, <code>false</code> otherwise
+     */
+    static boolean matches(final byte[] pattern, final int offset, final byte[] value, final int from,
+            final int length) {
+        if (VECTORIZED && length >= VectorByteSearch.MIN_LENGTH) {
+            return VectorByteSearch.matches(pattern, offset, value, from, length);
+        }
+        for (int i = 0; i < length; i++) {
+            final byte b = pattern[offset + i];
+            if (b != value[from + i] && b != '?') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,73 @@
+package com.blueconic.browscap.impl;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The loops of {@link ByteSearch} with the Vector API, comparing a vector of bytes at once and the remaining bytes one
+ * by one. Searching a byte uses the preferred vector size, because it scans the whole useragent. Most literals are
+ * shorter, so they're compared in vectors of 16 bytes. Shorter ranges are faster without vectors.
+ */
+final class VectorByteSearch {
+
+    private static final VectorSpecies<Byte> SEARCH_SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> COMPARE_SPECIES = ByteVector.SPECIES_128;
+
+    /** The minimum number of bytes for which the vector loops are used. */
+    static final int MIN_LENGTH = COMPARE_SPECIES.length();
+
+    private VectorByteSearch() {
+    }
+
+    /**
+     * Indicates whether the vectors are large enough to be useful on this platform.
+     * @return <code>true</code> if the vectors hold at least 16 bytes, <code>false</code> otherwise
+     */
+    static boolean isSupported() {
+        return SEARCH_SPECIES.length() >= COMPARE_SPECIES.length();
+    }
+
+    /**
+     * Finds the first index of a byte in a range of a value.
+     * @see ByteSearch#indexOf(byte[], byte, int, int)
+     */
+    static int indexOf(final byte[] value, final byte b, final int from, final int to) {
+        int i = from;
+        for (final int bound = to - SEARCH_SPECIES.length(); i <= bound; i += SEARCH_SPECIES.length()) {
+            final VectorMask<Byte> found = ByteVector.fromArray(SEARCH_SPECIES, value, i).eq(b);
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            if (value[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the bytes of a pattern with a range of a value, in which question marks match any byte.
+     * @see ByteSearch#matches(byte[], int, byte[], int, int)
+     */
+    static boolean matches(final byte[] pattern, final int offset, final byte[] value, final int from,
+            final int length) {
+        int i = 0;
+        for (final int bound = length - COMPARE_SPECIES.length(); i <= bound; i += COMPARE_SPECIES.length()) {
+            final ByteVector bytes = ByteVector.fromArray(COMPARE_SPECIES, pattern, offset + i);
+            final VectorMask<Byte> equal = bytes.eq(ByteVector.fromArray(COMPARE_SPECIES, value, from + i));
+            if (!equal.or(bytes.eq((byte) '?')).allTrue()) {
+                return false;
+            }
+        }
+        for (; i < length; i++) {
+            final byte b = pattern[offset + i];
+            if (b != value[from + i] && b != '?') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
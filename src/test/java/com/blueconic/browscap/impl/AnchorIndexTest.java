@@ -0,0 +1,68 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.impl.CandidateSetTest.toBitSet;
+import static com.blueconic.browscap.impl.CapabilitiesImpl.DEFAULT;
+import static org.junit.Assert.assertEquals;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+public class AnchorIndexTest {
+
+    private final UserAgentFileParser myParser = new UserAgentFileParser();
+
+    @Test
+    public void testGetCandidates() {
+        final Rule[] rules = {getRule("abc*"), getRule("ab*def"), getRule("*abc*"), getRule("a?c*"), getRule("abd*"),
+                getRule("abc"), getRule("b*")};
+        final AnchorIndex index = AnchorIndex.forPrefixes(rules);
+
+        assertEquals("{0, 1, 2, 3, 5}", getCandidates(index, "ABCdef"));
+        assertEquals("{1, 2, 4}", getCandidates(index, "abdef"));
+        assertEquals("{2, 3}", getCandidates(index, "axc"));
+        assertEquals("{2, 6}", getCandidates(index, "bcd"));
+        assertEquals("{2}", getCandidates(index, "a"));
+        assertEquals("{2}", getCandidates(index, ""));
+    }
+
+    @Test
+    public void testGetPostfixCandidates() {
+        final Rule[] rules = {getRule("*abc"), getRule("x*bc"), getRule("*abc*"), getRule("*a?c"), getRule("*xbc"),
+                getRule("abc")};
+        final AnchorIndex index = AnchorIndex.forPostfixes(rules);
+
+        assertEquals("{0, 1, 2, 3, 5}", getCandidates(index, "xxABC"));
+        assertEquals("{1, 2, 4, 5}", getCandidates(index, "xbc"));
+        assertEquals("{2, 3, 5}", getCandidates(index, "azc"));
+        assertEquals("{2, 5}", getCandidates(index, "c"));
+        assertEquals("{2, 5}", getCandidates(index, ""));
+    }
+
+    @Test
+    public void testLargeGroups() {
+        final Rule[] rules = new Rule[1000];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = getRule(i % 2 == 0 ? "even*" + i + "*" : "odd*" + i + "*");
+        }
+        final AnchorIndex index = AnchorIndex.forPrefixes(rules);
+
+        final CandidateSet result = new CandidateSet(rules.length);
+        final BitSet candidates = toBitSet(index.getCandidates(getString("even 10"), result), rules.length);
+        assertEquals(500, candidates.cardinality());
+        assertEquals(0, candidates.nextSetBit(0));
+        assertEquals(2, candidates.nextSetBit(1));
+    }
+
+    private String getCandidates(final AnchorIndex index, final String value) {
+        return toBitSet(index.getCandidates(getString(value), new CandidateSet(1000)), 1000).toString();
+    }
+
+    private Rule getRule(final String pattern) {
+        return myParser.createRule(pattern, DEFAULT);
+    }
+
+    private SearchableString getString(final String value) {
+        return new SearchableString(value, myParser.getLiterals().size());
+    }
+}
@@ -0,0 +1,40 @@
+package com.blueconic.browscap.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+public class BigramSignatureTest {
+
+    @Test
+    public void testLiteralSignature() {
+        final Literal literal = new Literal("ab?cd", 0);
+        final long low = literal.getLowSignature();
+        final long high = literal.getHighSignature();
+
+        // Only the bigrams without a question mark
+        assertEquals(2, Long.bitCount(low) + Long.bitCount(high));
+        assertEquals(getWord('a', 'b', false) | getWord('c', 'd', false), low);
+        assertEquals(getWord('a', 'b', true) | getWord('c', 'd', true), high);
+    }
+
+    @Test
+    public void testUserAgentSignature() {
+        final Literal literal = new Literal("ab?cd", 0);
+        final SearchableString value = new SearchableString("xABxCDx", 1);
+
+        // The useragent contains all bigrams of the literal
+        assertEquals(0, literal.getLowSignature() & ~value.getLowSignature());
+        assertEquals(0, literal.getHighSignature() & ~value.getHighSignature());
+
+        final SearchableString other = new SearchableString("xaxbcd", 1);
+        assertNotEquals(0, (literal.getLowSignature() & ~other.getLowSignature())
+                | (literal.getHighSignature() & ~other.getHighSignature()));
+    }
+
+    private static long getWord(final char first, final char second, final boolean high) {
+        final int bit = BigramSignature.getBit(first, second);
+        return bit >= 64 == high ? 1L << bit : 0;
+    }
+}
@@ -0,0 +1,46 @@
+package com.blueconic.browscap.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class ByteSearchTest {
+
+    private static final byte[] VALUE =
+            bytes("mozilla/5.0 (windows nt 10.0; win64; x64) applewebkit/537.36 (khtml, like gecko) chrome/58.0");
+
+    @Test
+    public void testIndexOf() {
+        assertEquals(12, ByteSearch.indexOf(VALUE, (byte) '(', 0, VALUE.length));
+        assertEquals(61, ByteSearch.indexOf(VALUE, (byte) '(', 13, VALUE.length));
+        assertEquals(-1, ByteSearch.indexOf(VALUE, (byte) '(', 13, 61));
+        assertEquals(-1, ByteSearch.indexOf(VALUE, (byte) 'q', 0, VALUE.length));
+        assertEquals(VALUE.length - 1, ByteSearch.indexOf(VALUE, (byte) '0', 90, VALUE.length));
+    }
+
+    @Test
+    public void testMatches() {
+        final byte[] pattern = bytes("xx(windows nt 1?.0; win64; x64)");
+        assertTrue(ByteSearch.matches(pattern, 2, VALUE, 12, pattern.length - 2));
+        assertTrue(ByteSearch.matches(pattern, 2, VALUE, 12, 4));
+        assertFalse(ByteSearch.matches(pattern, 2, VALUE, 11, pattern.length - 2));
+
+        // Only question marks of the pattern match any byte
+        final byte[] other = bytes("(windows nt 10.0; win64; x6?)");
+        assertTrue(ByteSearch.matches(other, 0, VALUE, 12, other.length));
+        assertFalse(ByteSearch.matches(VALUE, 12, other, 0, other.length));
+
+        // A mismatch in the last byte of a long range
+        final byte[] last = bytes("(windows nt 10.0; win64; x64]");
+        assertFalse(ByteSearch.matches(last, 0, VALUE, 12, last.length));
+        assertTrue(ByteSearch.matches(last, 0, VALUE, 12, last.length - 1));
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
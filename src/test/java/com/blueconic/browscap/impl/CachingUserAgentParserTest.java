@@ -0,0 +1,154 @@
+package com.blueconic.browscap.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.blueconic.browscap.CachingUserAgentParser;
+import com.blueconic.browscap.Capabilities;
+import com.blueconic.browscap.ParseException;
+import com.blueconic.browscap.ReloadableUserAgentParser;
+import com.blueconic.browscap.UserAgentParser;
+import com.blueconic.browscap.UserAgentService;
+
+public class CachingUserAgentParserTest {
+
+    // The number of lookups by the underlying parser
+    private int myLookups;
+
+    private final UserAgentParser myParser = new UserAgentParser() {
+        @Override
+        public Capabilities parse(final String userAgent) {
+            myLookups++;
+            return CapabilitiesImpl.DEFAULT;
+        }
+
+        @Override
+        public Rule[] getRules() {
+            return new Rule[0];
+        }
+    };
+
+    @Test
+    public void testStatistics() {
+        final CachingUserAgentParser parser = new CachingUserAgentParser(myParser, 10);
+        assertEquals(0, parser.getHitRatio(), 0);
+
+        assertSame(CapabilitiesImpl.DEFAULT, parser.parse("a"));
+        assertSame(CapabilitiesImpl.DEFAULT, parser.parse("a"));
+        assertSame(CapabilitiesImpl.DEFAULT, parser.parse("a"));
+        assertSame(CapabilitiesImpl.DEFAULT, parser.parse("b"));
+
+        assertEquals(2, myLookups);
+        assertEquals(2, parser.getHitCount());
+        assertEquals(2, parser.getMissCount());
+        assertEquals(0.5, parser.getHitRatio(), 0);
+        assertEquals(2, parser.size());
+        assertTrue(parser.getTotalLoadTime() >= 0);
+
+        parser.clear();
+        assertEquals(0, parser.size());
+        parser.parse("a");
+        assertEquals(3, myLookups);
+    }
+
+    @Test
+    public void testBounded() {
+        final CachingUserAgentParser parser = new CachingUserAgentParser(myParser, 10);
+        for (int i = 0; i < 1000; i++) {
+            parser.parse("agent " + i);
+            parser.parse("agent " + i);
+        }
+        assertEquals(10, parser.size());
+        assertTrue(parser.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void testFrequentUserAgentsSurviveFlood() {
+        final CachingUserAgentParser parser = new CachingUserAgentParser(myParser, 5);
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 5; j++) {
+                parser.parse("frequent " + j);
+            }
+        }
+
+        // A flood of unique useragents doesn't evict the frequent ones
+        final int lookups = myLookups;
+        for (int i = 0; i < 1000; i++) {
+            parser.parse("unique " + i);
+            parser.parse("frequent " + i % 5);
+        }
+        assertEquals(lookups + 1000, myLookups);
+        assertEquals(0, parser.getEvictionCount());
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        final UserAgentParser second = getParser("Second");
+        final ReloadableUserAgentParser reloadable = new ReloadableUserAgentParser(getParser("First"));
+        final CachingUserAgentParser parser = new CachingUserAgentParser(reloadable, 10);
+        assertEquals("First", parser.parse("test agent").getBrowser());
+        assertEquals("First", parser.parse("test agent").getBrowser());
+
+        reloadable.setParser(second);
+        assertEquals("Second", parser.parse("test agent").getBrowser());
+        assertEquals(1, parser.size());
+        assertEquals("^test.*?$", parser.getPattern("test agent"));
+    }
+
+    @Test
+    public void testReloadDuringMiss() throws Exception {
+        final UserAgentParser first = getParser("First");
+        final UserAgentParser second = getParser("Second");
+        final ReloadableUserAgentParser reloadable = new ReloadableUserAgentParser(first);
+
+        // The parser is reloaded while the first version determines the result of a miss
+        reloadable.setParser(new UserAgentParser() {
+            @Override
+            public Capabilities parse(final String userAgent) {
+                reloadable.setParser(second);
+                return first.parse(userAgent);
+            }
+
+            @Override
+            public Rule[] getRules() {
+                return first.getRules();
+            }
+        });
+        final CachingUserAgentParser parser = new CachingUserAgentParser(reloadable, 10);
+        assertEquals("First", parser.parse("test agent").getBrowser());
+
+        // The result of the previous version isn't cached for the new one
+        assertEquals("Second", parser.parse("test agent").getBrowser());
+        assertEquals("Second", parser.parse("test agent").getBrowser());
+        assertEquals(1, parser.getHitCount());
+    }
+
+    @Test
+    public void testNull() {
+        final CachingUserAgentParser parser = new CachingUserAgentParser(myParser, 10);
+        assertSame(CapabilitiesImpl.DEFAULT, parser.parse(null));
+        assertEquals(0, parser.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new CachingUserAgentParser(myParser, 0);
+    }
+
+    private static UserAgentParser getParser(final String browser) throws IOException, ParseException {
+        final String[] fields = new String[48];
+        Arrays.fill(fields, "");
+        fields[0] = "test*";
+        fields[5] = browser;
+        final String csv = String.join(",", fields) + "\n";
+        return new UserAgentService().loadParser(new ByteArrayInputStream(csv.getBytes(UTF_8)));
+    }
+}
@@ -0,0 +1,47 @@
+package com.blueconic.browscap.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+public class CandidateSetTest {
+
+    @Test
+    public void testCombine() {
+        final CandidateSet set = new CandidateSet(200);
+        set.add(3);
+        set.add(130);
+        set.addMask(new long[]{0b1010});
+        set.addMask(new long[]{0, 1L << 63});
+        assertEquals("{1, 3, 127, 130}", toBitSet(set, 200).toString());
+
+        // A range of the set
+        final long[] words = new long[2];
+        set.getWords(1, words, 2);
+        assertArrayEquals(new long[]{1L << 63, 1L << 2}, words);
+    }
+
+    @Test
+    public void testClear() {
+        final CandidateSet set = new CandidateSet(200);
+        for (int i = 0; i < 200; i += 3) {
+            set.add(i);
+        }
+        set.addMask(new long[]{-1L});
+        set.clear();
+        assertEquals("{}", toBitSet(set, 200).toString());
+
+        set.add(199);
+        assertEquals("{199}", toBitSet(set, 200).toString());
+    }
+
+    // All rules of a set
+    static BitSet toBitSet(final CandidateSet set, final int numberOfRules) {
+        final long[] words = new long[CandidateSet.getNumberOfWords(numberOfRules)];
+        set.getWords(0, words, words.length);
+        return BitSet.valueOf(words);
+    }
+}
@@ -0,0 +1,72 @@
+package com.blueconic.browscap.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompressedBitmapTest {
+
+    private static final int SIZE = 20000;
+
+    @Test
+    public void testContainers() {
+        final Random random = new Random(42);
+        for (final BitSet bits : Arrays.asList(getRuns(random, 3), getRuns(random, 50), getValues(random, 10),
+                getValues(random, 5000), new BitSet())) {
+            final CompressedBitmap bitmap = new CompressedBitmap(bits);
+            assertEquals(bits, bitmap.toBitSet());
+
+            // Remove the bitmap per block
+            final long[] expected = new long[CandidateSet.getNumberOfWords(SIZE)];
+            Arrays.fill(expected, -1L);
+            final long[] actual = expected.clone();
+            final long[] words = bits.toLongArray();
+            for (int i = 0; i < words.length; i++) {
+                expected[i] &= ~words[i];
+            }
+            for (int from = 0; from < actual.length; from += CompressedBitmap.CONTAINER_WORDS) {
+                final int length = Math.min(CompressedBitmap.CONTAINER_WORDS, actual.length - from);
+                final long[] block = Arrays.copyOfRange(actual, from, from + length);
+                bitmap.removeFrom(block, from, length);
+                System.arraycopy(block, 0, actual, from, length);
+            }
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testRemoveFromEmptyRange() {
+        final BitSet bits = new BitSet();
+        bits.set(10000);
+        final CompressedBitmap bitmap = new CompressedBitmap(bits);
+
+        final long[] block = {-1L, -1L};
+        assertFalse(bitmap.removeFrom(block, 0, block.length));
+        assertTrue(bitmap.removeFrom(new long[CompressedBitmap.CONTAINER_WORDS], 128, 64));
+        assertArrayEquals(new long[]{-1L, -1L}, block);
+    }
+
+    private static BitSet getRuns(final Random random, final int count) {
+        final BitSet result = new BitSet();
+        for (int i = 0; i < count; i++) {
+            final int start = random.nextInt(SIZE - 200);
+            result.set(start, start + 1 + random.nextInt(200));
+        }
+        return result;
+    }
+
+    private static BitSet getValues(final Random random, final int count) {
+        final BitSet result = new BitSet();
+        for (int i = 0; i < count; i++) {
+            result.set(random.nextInt(SIZE));
+        }
+        return result;
+    }
+}
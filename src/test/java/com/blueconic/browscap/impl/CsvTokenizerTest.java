@@ -0,0 +1,92 @@
+package com.blueconic.browscap.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class CsvTokenizerTest {
+
+    @Test
+    public void testProjection() throws IOException {
+        final CsvTokenizer tokenizer = getTokenizer("\"a\",\"b\",\"c\",\"d\"\n\"e\",\"f\",\"g\",\"h\"\n", 4, new int[]{1, 3});
+        final String[] values = new String[4];
+
+        assertEquals(4, tokenizer.next(values));
+        assertNull(values[0]);
+        assertEquals("b", values[1]);
+        assertNull(values[2]);
+        assertEquals("d", values[3]);
+
+        assertEquals(4, tokenizer.next(values));
+        assertEquals("f", values[1]);
+        assertEquals("h", values[3]);
+
+        assertEquals(-1, tokenizer.next(values));
+    }
+
+    @Test
+    public void testQuotes() throws IOException {
+        final CsvTokenizer tokenizer = getTokenizer("\"a,b\",\"say \"\"hi\"\"\",\"\",plain,\"x\"y\r\n", 4, new int[]{0, 1, 2, 3, 4});
+        final String[] values = new String[5];
+
+        assertEquals(5, tokenizer.next(values));
+        assertEquals("a,b", values[0]);
+        assertEquals("say \"hi\"", values[1]);
+        assertEquals("", values[2]);
+        assertEquals("plain", values[3]);
+        assertEquals("xy", values[4]);
+        assertEquals(-1, tokenizer.next(values));
+    }
+
+    @Test
+    public void testMissingColumns() throws IOException {
+        final CsvTokenizer tokenizer = getTokenizer("a,b,c\nd\n\ne,f", 1024, new int[]{0, 2});
+        final String[] values = new String[3];
+
+        assertEquals(3, tokenizer.next(values));
+        assertEquals("a", values[0]);
+        assertEquals("c", values[2]);
+
+        // Values of the previous record are cleared
+        assertEquals(1, tokenizer.next(values));
+        assertEquals("d", values[0]);
+        assertNull(values[2]);
+
+        assertEquals(1, tokenizer.next(values));
+        assertEquals("", values[0]);
+
+        // No line ending at the end of the input
+        assertEquals(2, tokenizer.next(values));
+        assertEquals("e", values[0]);
+        assertNull(values[2]);
+        assertEquals(-1, tokenizer.next(values));
+    }
+
+    @Test
+    public void testLongValues() throws IOException {
+        // Values exceed the buffer, so they span multiple refills
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            value.append("é\"\"").append(i);
+        }
+        final String input = "skipped \"\" value,\"" + value + "\"\nnext,\"" + value + "\"";
+        final CsvTokenizer tokenizer = getTokenizer(input, 8, new int[]{1});
+        final String[] values = new String[2];
+
+        final String expected = value.toString().replace("\"\"", "\"");
+        assertEquals(2, tokenizer.next(values));
+        assertEquals(expected, values[1]);
+        assertEquals(2, tokenizer.next(values));
+        assertEquals(expected, values[1]);
+        assertEquals(-1, tokenizer.next(values));
+    }
+
+    private CsvTokenizer getTokenizer(final String input, final int bufferSize, final int[] columns) {
+        return new CsvTokenizer(new ByteArrayInputStream(input.getBytes(UTF_8)), bufferSize, columns);
+    }
+}
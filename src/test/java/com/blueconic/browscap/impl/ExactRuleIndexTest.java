@@ -0,0 +1,46 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.impl.CapabilitiesImpl.DEFAULT;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ExactRuleIndexTest {
+
+    private final UserAgentFileParser myParser = new UserAgentFileParser();
+
+    @Test
+    public void testFind() {
+        final Rule[] rules = {getRule("abc"), getRule("*abc*"), getRule("a?c"), getRule("abc"), getRule("def")};
+        final ExactRuleIndex index = new ExactRuleIndex(rules);
+
+        // Only the first of the rules without wildcards and question marks is indexed
+        final long[] block = {-1L};
+        index.excludeRules(block, 0, 1);
+        assertEquals(~0b10001L, block[0]);
+
+        assertEquals(0, index.find(getString("ABC")));
+        assertEquals(4, index.find(getString("def")));
+        assertEquals(-1, index.find(getString("abd")));
+        assertEquals(-1, index.find(getString("abcd")));
+        assertEquals(-1, index.find(getString("")));
+    }
+
+    @Test
+    public void testEmpty() {
+        final ExactRuleIndex index = new ExactRuleIndex(new Rule[]{getRule("*abc*")});
+        assertEquals(-1, index.find(getString("abc")));
+
+        final long[] block = {-1L};
+        index.excludeRules(block, 0, 1);
+        assertEquals(-1L, block[0]);
+    }
+
+    private Rule getRule(final String pattern) {
+        return myParser.createRule(pattern, DEFAULT);
+    }
+
+    private SearchableString getString(final String value) {
+        return new SearchableString(value, myParser.getLiterals().size());
+    }
+}
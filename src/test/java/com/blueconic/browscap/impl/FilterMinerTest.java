@@ -0,0 +1,63 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.impl.CapabilitiesImpl.DEFAULT;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.blueconic.browscap.impl.UserAgentParserImpl.Filter;
+
+public class FilterMinerTest {
+
+    private final UserAgentFileParser myParser = new UserAgentFileParser();
+
+    @Test
+    public void testMine() {
+        final Rule[] rules = {getRule("pre*"), getRule("*foo*"), getRule("*foo*bar*"), getRule("*bar*"),
+                getRule("*baz*"), getRule("*post")};
+        final Filter[] filters = getMiner(rules).mine(FilterMiner.MAX_FILTERS);
+
+        // The prefixes and postfixes are handled by the anchor indices
+        assertEquals(3, filters.length);
+        assertEquals("{1, 2}", getFilter(filters, "foo").getMask().toString());
+        assertEquals("{2, 3}", getFilter(filters, "bar").getMask().toString());
+        assertEquals("{4}", filters[2].getMask().toString());
+        assertEquals("baz", filters[2].getLiteral().toString());
+    }
+
+    @Test
+    public void testContainedLiterals() {
+        final Rule[] rules = {getRule("*abc*"), getRule("*xabcx*"), getRule("*def*")};
+        final Filter[] filters = getMiner(rules).mine(FilterMiner.MAX_FILTERS);
+
+        // A rule requiring "xabcx" also requires "abc"
+        assertEquals("{0, 1}", getFilter(filters, "abc").getMask().toString());
+    }
+
+    @Test
+    public void testOverlap() {
+        final Rule[] rules = {getRule("*abc*def*"), getRule("*abc*def*x"), getRule("*ghi*"), getRule("*jkl*")};
+
+        // "abc" and "def" exclude the same rules, so only one of them is used
+        assertEquals(3, getMiner(rules).mine(FilterMiner.MAX_FILTERS).length);
+        assertEquals(1, getMiner(rules).mine(1).length);
+    }
+
+    private FilterMiner getMiner(final Rule[] rules) {
+        final LiteralRegistry literals = myParser.getLiterals();
+        return new FilterMiner(rules, literals.getLiteralsByIndex(), new LiteralAutomaton(literals.getLiterals()));
+    }
+
+    private static Filter getFilter(final Filter[] filters, final String literal) {
+        for (final Filter filter : filters) {
+            if (filter.getLiteral().toString().equals(literal)) {
+                return filter;
+            }
+        }
+        throw new AssertionError("No filter for " + literal);
+    }
+
+    private Rule getRule(final String pattern) {
+        return myParser.createRule(pattern, DEFAULT);
+    }
+}
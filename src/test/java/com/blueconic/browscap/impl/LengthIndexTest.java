@@ -0,0 +1,40 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.impl.CapabilitiesImpl.DEFAULT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+public class LengthIndexTest {
+
+    private final UserAgentFileParser myParser = new UserAgentFileParser();
+
+    @Test
+    public void testMinLength() {
+        assertEquals(6, getRule("abc*def").getMinLength());
+        assertEquals(5, getRule("*a?c*de*").getMinLength());
+        assertEquals(3, getRule("abc").getMinLength());
+        assertEquals(0, getRule("*").getMinLength());
+
+        // The prefix and postfix can't overlap
+        assertFalse(getRule("abc*cde").matches(new SearchableString("abcde", myParser.getLiterals().size())));
+    }
+
+    @Test
+    public void testGetFirstWord() {
+        final Rule[] rules = new Rule[200];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = getRule(i < 100 ? "long pattern*" + i : "short*" + i);
+        }
+        final LengthIndex index = new LengthIndex(rules);
+
+        assertEquals(4, index.getFirstWord(1));
+        assertEquals(1, index.getFirstWord(8));
+        assertEquals(0, index.getFirstWord(20));
+    }
+
+    private Rule getRule(final String pattern) {
+        return myParser.createRule(pattern, DEFAULT);
+    }
+}
@@ -0,0 +1,114 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.impl.CapabilitiesImpl.DEFAULT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blueconic.browscap.BrowsCapField;
+import com.blueconic.browscap.Capabilities;
+import com.blueconic.browscap.UserAgentParser;
+
+public class ParserSnapshotTest {
+
+    private final UserAgentFileParser myParser = new UserAgentFileParser();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final UserAgentParser parser = getParser();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParserSnapshot.write(parser, out);
+        final UserAgentParser restored = ParserSnapshot.read(ByteBuffer.wrap(out.toByteArray()));
+
+        validate(parser, restored);
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        final UserAgentParser parser = getParser();
+
+        final Path file = Files.createTempFile("browscap", ".snapshot");
+        try {
+            ParserSnapshot.write(parser, file);
+            validate(parser, ParserSnapshot.read(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidSnapshot() throws IOException {
+        ParserSnapshot.read(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedSnapshot() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParserSnapshot.write(getParser(), out);
+        ParserSnapshot.read(ByteBuffer.wrap(out.toByteArray(), 0, out.size() / 2));
+    }
+
+    @Test
+    public void testCorruptLength() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParserSnapshot.write(getParser(), out);
+
+        // The number of literals follows the header; huge or negative lengths must fail before allocating
+        for (final int length : new int[]{Integer.MAX_VALUE, -1}) {
+            final ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+            buffer.putInt(8, length);
+            try {
+                ParserSnapshot.read(buffer);
+                fail("Corrupt length " + length + " has been read");
+            } catch (final IOException e) {
+                assertEquals("Corrupt BrowsCap parser snapshot", e.getMessage());
+            }
+        }
+    }
+
+    private void validate(final UserAgentParser expected, final UserAgentParser actual) {
+        final Rule[] expectedRules = expected.getRules();
+        final Rule[] actualRules = actual.getRules();
+        assertEquals(expectedRules.length, actualRules.length);
+        for (int i = 0; i < expectedRules.length; i++) {
+            assertEquals(expectedRules[i].getPattern(), actualRules[i].getPattern());
+            assertEquals(expectedRules[i].getSize(), actualRules[i].getSize());
+            assertEquals(expectedRules[i].getCapabilities().toString(), actualRules[i].getCapabilities().toString());
+        }
+
+        for (final String useragent : new String[]{"test_123_abc", "test_abcd", "1_test_abcd", "x123test", "other"}) {
+            assertEquals(expected.parse(useragent).toString(), actual.parse(useragent).toString());
+            assertEquals(expected.getPattern(useragent), actual.getPattern(useragent));
+        }
+        assertEquals("Chrome", actual.parse("TEST_123_ABC").getBrowser());
+        assertEquals("^test.*?123.*?abc.*?$", actual.getPattern("TEST_123_ABC"));
+        for (final BrowsCapField field : BrowsCapField.values()) {
+            assertEquals(getValues(expected, field), getValues(actual, field));
+            assertEquals(expected.parse("test_123_abc").getCode(field), actual.parse("test_123_abc").getCode(field));
+        }
+        assertNull(actualRules[actualRules.length - 1].getPrefix());
+    }
+
+    private static List<String> getValues(final UserAgentParser parser, final BrowsCapField field) {
+        return ((UserAgentParserImpl) parser).getValueDictionary().getValues(field);
+    }
+
+    private UserAgentParser getParser() {
+        final Capabilities chrome = new CapabilitiesImpl(myParser.getValueDictionary(), "Chrome", "Browser", "58",
+                "Desktop", "Win10", "10.0", "Chrome 58", "PC", "Windows Desktop", "Microsoft Corporation", "Various",
+                "Various");
+        final Rule[] rules = {myParser.createRule("test*123*abc*", chrome), myParser.createRule("*test*abcd*", DEFAULT),
+                myParser.createRule("*123*test", DEFAULT), myParser.createRule("*", DEFAULT)};
+        return new UserAgentParserImpl(rules, myParser.getLiterals(), myParser.getValueDictionary());
+    }
+}
@@ -0,0 +1,45 @@
+package com.blueconic.browscap.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class ReaderInputStreamTest {
+
+    @Test
+    public void testEncode() throws IOException {
+        // Surrogate pairs and multibyte characters which are split by the buffer
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("a\u00e9\uD83D\uDE00,").append(i);
+        }
+        final String value = text.toString();
+
+        for (final int bufferSize : new int[]{2, 3, 7, 1024}) {
+            try (final InputStream in = new ReaderInputStream(new StringReader(value), bufferSize)) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[5];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                assertArrayEquals(value.getBytes(UTF_8), out.toByteArray());
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        try (final InputStream in = new ReaderInputStream(new StringReader(""), 16)) {
+            assertEquals(-1, in.read());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.BrowsCapField.BROWSER;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.blueconic.browscap.Capabilities;
+import com.blueconic.browscap.ParseException;
+import com.blueconic.browscap.ReloadableUserAgentParser;
+import com.blueconic.browscap.UserAgentParser;
+import com.blueconic.browscap.UserAgentService;
+
+public class ReloadableUserAgentParserTest {
+
+    @Rule
+    public final TemporaryFolder myFolder = new TemporaryFolder();
+
+    @Test
+    public void testReloadStream() throws Exception {
+        try (final ReloadableUserAgentParser parser = new ReloadableUserAgentParser(getParser("First"))) {
+            assertEquals("First", parser.parse("test agent").getBrowser());
+
+            final UserAgentParser second = parser.reload(getInput("Second")).get(30, SECONDS);
+            assertSame(second, parser.getParser());
+            assertEquals("Second", parser.parse("test agent").getBrowser());
+        }
+    }
+
+    @Test
+    public void testReloadCodes() throws Exception {
+        try (final ReloadableUserAgentParser parser = new ReloadableUserAgentParser(getParser("First"))) {
+            final Capabilities first = parser.parse("test agent");
+            parser.reload(getInput("Second")).get(30, SECONDS);
+            final Capabilities second = parser.parse("test agent");
+
+            // The codes are decoded with the values of the parser which returned them
+            assertEquals(first.getCode(BROWSER), second.getCode(BROWSER));
+            assertEquals("First", first.getValues(BROWSER).get(first.getCode(BROWSER)));
+            assertEquals("Second", second.getValues(BROWSER).get(second.getCode(BROWSER)));
+            assertNotSame(first.getValues(BROWSER), second.getValues(BROWSER));
+        }
+    }
+
+    @Test
+    public void testFailedReload() throws Exception {
+        try (final ReloadableUserAgentParser parser = new ReloadableUserAgentParser(getParser("First"))) {
+            final UserAgentParser first = parser.getParser();
+            try {
+                parser.reload(myFolder.getRoot().toPath().resolve("missing.csv")).get(30, SECONDS);
+                fail();
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+
+            // The current parser is kept
+            assertSame(first, parser.getParser());
+        }
+    }
+
+    @Test
+    public void testReloadClosed() throws Exception {
+        final ReloadableUserAgentParser parser = new ReloadableUserAgentParser(getParser("First"));
+        final UserAgentParser first = parser.getParser();
+        parser.close();
+
+        // Reloading a closed parser fails through the future, and the stream is closed
+        final ClosingInput input = new ClosingInput(getCsv("Second"));
+        final CompletableFuture<UserAgentParser> future = parser.reload(input);
+        try {
+            future.get(30, SECONDS);
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertTrue(input.myClosed);
+        assertSame(first, parser.getParser());
+    }
+
+    @Test
+    public void testCloseWhileLoading() throws Exception {
+        final ReloadableUserAgentParser parser = new ReloadableUserAgentParser(getParser("First"));
+
+        // The first stream blocks the loader until it's interrupted, so the second one is still waiting
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CompletableFuture<UserAgentParser> blocked = parser.reload(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (final InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return -1;
+            }
+        });
+        final ClosingInput input = new ClosingInput(getCsv("Second"));
+        final CompletableFuture<UserAgentParser> waiting = parser.reload(input);
+        assertTrue(reading.await(30, SECONDS));
+        parser.close();
+
+        // The future of the waiting stream completes, and the stream is closed without being read
+        try {
+            waiting.get(30, SECONDS);
+            fail();
+        } catch (final CancellationException e) {
+            assertTrue(input.myClosed);
+        }
+        try {
+            blocked.get(30, SECONDS);
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals("First", parser.parse("test agent").getBrowser());
+    }
+
+    @Test
+    public void testReloadFiles() throws Exception {
+        final Path csv = myFolder.newFile("browscap.csv").toPath();
+        Files.write(csv, getCsv("Csv").getBytes(UTF_8));
+        final Path snapshot = myFolder.newFile("browscap.snapshot").toPath();
+        ParserSnapshot.write(getParser("Snapshot"), snapshot);
+
+        try (final ReloadableUserAgentParser parser = new ReloadableUserAgentParser(getParser("First"))) {
+            parser.reload(csv).get(30, SECONDS);
+            assertEquals("Csv", parser.parse("test agent").getBrowser());
+
+            parser.reload(snapshot).get(30, SECONDS);
+            assertEquals("Snapshot", parser.parse("test agent").getBrowser());
+        }
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        final Path directory = myFolder.newFolder("watched").toPath();
+        try (final ReloadableUserAgentParser parser = new ReloadableUserAgentParser(getParser("First"))) {
+            parser.watch(directory);
+
+            // Move a complete file into the directory
+            final Path file = myFolder.newFile("new.csv").toPath();
+            Files.write(file, getCsv("Watched").getBytes(UTF_8));
+            Files.move(file, directory.resolve("new.csv"), ATOMIC_MOVE);
+
+            final long deadline = System.currentTimeMillis() + 30000;
+            while (!"Watched".equals(parser.parse("test agent").getBrowser())) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    @Test
+    public void testWatchFailure() throws Exception {
+        final Path directory = myFolder.newFolder("watched").toPath();
+        final BlockingQueue<Path> failures = new LinkedBlockingQueue<>();
+        try (final ReloadableUserAgentParser parser = new ReloadableUserAgentParser(getParser("First"))) {
+            parser.watch(directory, (file, e) -> failures.add(file));
+
+            // An invalid file is reported, and the current parser is kept
+            final Path file = myFolder.newFile("invalid.snapshot").toPath();
+            Files.write(file, new byte[]{1, 2, 3});
+            Files.move(file, directory.resolve("invalid.snapshot"), ATOMIC_MOVE);
+
+            assertEquals(directory.resolve("invalid.snapshot"), failures.poll(30, SECONDS));
+            assertEquals("First", parser.parse("test agent").getBrowser());
+        }
+    }
+
+    private static UserAgentParser getParser(final String browser) throws IOException, ParseException {
+        return new UserAgentService().loadParser(getInput(browser));
+    }
+
+    private static InputStream getInput(final String browser) {
+        return new ByteArrayInputStream(getCsv(browser).getBytes(UTF_8));
+    }
+
+    private static class ClosingInput extends ByteArrayInputStream {
+        private volatile boolean myClosed;
+
+        ClosingInput(final String csv) {
+            super(csv.getBytes(UTF_8));
+        }
+
+        @Override
+        public void close() throws IOException {
+            myClosed = true;
+            super.close();
+        }
+    }
+
+    private static String getCsv(final String browser) {
+        final String[] fields = new String[48];
+        Arrays.fill(fields, "");
+        fields[0] = "test*";
+        fields[5] = browser;
+        return String.join(",", fields) + "\n";
+    }
+}
@@ -0,0 +1,89 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.impl.CapabilitiesImpl.DEFAULT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class RuleTableTest {
+
+    private static final String[] PATTERNS =
+            {"abc", "abc*", "*abc", "*abc*", "a?c*d*e", "abc*cde", "*a*b*c*", "*", "ab*ab*ab", "?*??"};
+
+    private static final String[] USERAGENTS =
+            {"abc", "abcde", "xabc", "xabcx", "abcdxe", "abcde", "abcdecde", "aabbcc", "ababab", "abab", "x", ""};
+
+    private final UserAgentFileParser myParser = new UserAgentFileParser();
+
+    @Test
+    public void testMatches() {
+        final Rule[] rules = getRules();
+        final RuleTable table = new RuleTable(rules, myParser.getLiterals().getLiteralsByIndex());
+        assertEquals(rules.length, table.size());
+
+        for (final String useragent : USERAGENTS) {
+            final SearchableString value = new SearchableString(useragent, myParser.getLiterals().size());
+            for (int i = 0; i < rules.length; i++) {
+                assertEquals(rules[i].getPattern() + " " + useragent, rules[i].matches(value), table.matches(i, value));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesCandidate() {
+        final Rule[] rules = getRules();
+        final RuleTable table = new RuleTable(rules, myParser.getLiterals().getLiteralsByIndex());
+
+        // The candidates of a useragent are the rules of which the anchors match
+        int candidates = 0;
+        for (final String useragent : USERAGENTS) {
+            final SearchableString value = new SearchableString(useragent, myParser.getLiterals().size());
+            for (int i = 0; i < rules.length; i++) {
+                final Rule rule = rules[i];
+                if ((rule.getPrefix() == null || value.startsWith(rule.getPrefix()))
+                        && (rule.getPostfix() == null || value.endsWith(rule.getPostfix()))) {
+                    assertEquals(rule.getPattern() + " " + useragent, rule.matches(value),
+                            table.matchesCandidate(i, value));
+                    candidates++;
+                }
+            }
+        }
+        assertEquals(67, candidates);
+    }
+
+    @Test
+    public void testGetRules() {
+        final Rule[] rules = getRules();
+        final RuleTable table = new RuleTable(rules, myParser.getLiterals().getLiteralsByIndex());
+
+        final Rule[] actual = table.getRules();
+        assertEquals(rules.length, actual.length);
+        for (int i = 0; i < rules.length; i++) {
+            assertEquals(rules[i].getPattern(), actual[i].getPattern());
+            assertEquals(rules[i].getSize(), actual[i].getSize());
+            assertSame(rules[i].getCapabilities(), actual[i].getCapabilities());
+            assertSame(rules[i].getCapabilities(), table.getCapabilities(i));
+        }
+    }
+
+    @Test
+    public void testCompactLiterals() {
+        final Rule[] rules = getRules();
+        myParser.getLiterals().compact();
+
+        final Rule[] actual = new RuleTable(rules, myParser.getLiterals().getLiteralsByIndex()).getRules();
+        for (int i = 0; i < rules.length; i++) {
+            assertEquals(PATTERNS[i], actual[i].getPattern());
+        }
+        assertEquals("a?c", myParser.getLiterals().getLiteral("a?c").toString());
+    }
+
+    private Rule[] getRules() {
+        final Rule[] result = new Rule[PATTERNS.length];
+        for (int i = 0; i < PATTERNS.length; i++) {
+            result[i] = myParser.createRule(PATTERNS[i], DEFAULT);
+        }
+        return result;
+    }
+}
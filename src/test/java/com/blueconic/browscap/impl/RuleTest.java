@@ -13,6 +13,8 @@ import com.blueconic.browscap.impl.UserAgentFileParser;
 
 public class RuleTest {
 
+    private final UserAgentFileParser myParser = new UserAgentFileParser();
+
     @Test
     public void testLiteralExpression() {
         final Rule rule = getRule("a");
@@ -132,14 +134,26 @@ public class RuleTest {
         assertTrue(prepost.requires("bc"));
     }
 
+    @Test
+    public void testHasPattern() {
+        for (final String pattern : new String[]{"abc", "abc*", "*abc", "*", "*abc*def*", "abc*d?f*g", "a*b*c"}) {
+            final Rule rule = getRule(pattern);
+            assertTrue(rule.hasPattern(pattern));
+            assertFalse(rule.hasPattern(pattern + "x"));
+            assertFalse(rule.hasPattern(pattern.substring(1)));
+            assertFalse(rule.hasPattern(pattern + "*"));
+        }
+        assertFalse(getRule("a*c").hasPattern("a?c"));
+        assertFalse(getRule("a?c").hasPattern("a*c"));
+    }
+
     private Rule getRule(final String pattern) {
-        final UserAgentFileParser parser = new UserAgentFileParser();
-        final Rule rule = parser.createRule(pattern, DEFAULT);
+        final Rule rule = myParser.createRule(pattern, DEFAULT);
         assertEquals(pattern, rule.getPattern());
         return rule;
     }
 
     private boolean matches(final Rule rule, final String useragent) {
-        return rule.matches(new SearchableString(useragent));
+        return rule.matches(new SearchableString(useragent, myParser.getLiterals().size()));
     }
 }
\ No newline at end of file
@@ -4,9 +4,11 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
-import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 import org.junit.Test;
 
 import com.blueconic.browscap.impl.Literal;
@@ -14,13 +16,15 @@ import com.blueconic.browscap.impl.SearchableString;
 
 public class SearchableStringTest {
 
+    private final LiteralRegistry myLiterals = new LiteralRegistry();
+
     @Test
     public void testSearchableString() {
-        final Literal abc = new Literal("abc");
-        final Literal ab = new Literal("ab");
+        final Literal abc = myLiterals.getLiteral("abc");
+        final Literal ab = myLiterals.getLiteral("ab");
 
         final String stringValue = "abababc";
-        final SearchableString cache = new SearchableString(stringValue);
+        final SearchableString cache = new SearchableString(stringValue, myLiterals.size());
 
         assertTrue(cache.startsWith(ab));
         assertFalse(cache.startsWith(abc));
@@ -39,28 +43,109 @@ public class SearchableStringTest {
 
     @Test
     public void testGetIndices() {
-        final Literal abc = new Literal("abc");
-        final Literal ab = new Literal("ab");
-        final Literal anyChar = new Literal("?ab");
-        final Literal noMatch = new Literal("aaaaaaaaaaaaaaaaaa");
+        final Literal abc = myLiterals.getLiteral("abc");
+        final Literal ab = myLiterals.getLiteral("ab");
+        final Literal anyChar = myLiterals.getLiteral("?ab");
+        final Literal noMatch = myLiterals.getLiteral("aaaaaaaaaaaaaaaaaa");
+
+        final SearchableString cache = new SearchableString("abababc", myLiterals.size());
+
+        assertArrayEquals(new int[]{4}, getIndices(cache, abc));
+        assertArrayEquals(new int[]{0, 2, 4}, getIndices(cache, ab));
 
-        final SearchableString cache = new SearchableString("abababc");
+        assertArrayEquals(new int[]{1, 3}, getIndices(cache, anyChar));
 
-        assertArrayEquals(new int[]{4}, cache.getIndices(abc));
-        assertArrayEquals(new int[]{0, 2, 4}, cache.getIndices(ab));
+        assertArrayEquals(new int[0], getIndices(cache, noMatch));
+
+        // Test caching path
+        assertArrayEquals(new int[]{0, 2, 4}, getIndices(cache, ab));
+        assertEquals(2, cache.indexOf(ab, 1));
+        assertEquals(-1, cache.indexOf(ab, 5));
+        assertTrue(cache.contains(anyChar));
+        assertFalse(cache.contains(noMatch));
+    }
+
+    @Test
+    public void testReset() {
+        final Literal abc = myLiterals.getLiteral("abc");
+        final Literal ab = myLiterals.getLiteral("ab");
+        final LiteralAutomaton automaton = new LiteralAutomaton(Arrays.asList(abc, ab));
+
+        final SearchableString cache = new SearchableString("abababc", myLiterals.size(), automaton);
+        assertTrue(cache.endsWith(abc));
+        assertArrayEquals(new int[]{0, 2, 4}, getIndices(cache, ab));
+
+        // Reuse the instance for a shorter value, which is converted to lowercase
+        cache.reset("XABC");
+        assertEquals("xabc", cache.toString());
+        assertEquals(4, cache.getSize());
+        assertTrue(cache.endsWith(abc));
+        assertFalse(cache.startsWith(ab));
+        assertArrayEquals(new int[]{1}, getIndices(cache, ab));
 
-        assertArrayEquals(new int[]{1, 3}, cache.getIndices(anyChar));
+        // Values which are not ASCII
+        cache.reset("\u00C4BC");
+        assertEquals("\u00E4bc", cache.toString());
+        assertArrayEquals(new int[0], getIndices(cache, ab));
+    }
 
-        assertArrayEquals(new int[0], cache.getIndices(noMatch));
+    @Test
+    public void testGetIndicesWithAutomaton() {
+        final Literal abc = myLiterals.getLiteral("abc");
+        final Literal ab = myLiterals.getLiteral("ab");
+        final Literal anyChar = myLiterals.getLiteral("?ab");
+        final Literal middle = myLiterals.getLiteral("b?b");
+        final Literal noMatch = myLiterals.getLiteral("aaaaaaaaaaaaaaaaaa");
+        final Literal notCovered = myLiterals.getLiteral("ba");
+
+        final LiteralAutomaton automaton = new LiteralAutomaton(Arrays.asList(abc, ab, anyChar, middle, noMatch));
+        assertTrue(automaton.covers(abc));
+        assertFalse(automaton.covers(notCovered));
+
+        final SearchableString cache = new SearchableString("abababc", myLiterals.size(), automaton);
+
+        assertArrayEquals(new int[]{4}, getIndices(cache, abc));
+        assertArrayEquals(new int[]{0, 2, 4}, getIndices(cache, ab));
+        assertArrayEquals(new int[]{1, 3}, getIndices(cache, anyChar));
+        assertArrayEquals(new int[]{1, 3}, getIndices(cache, middle));
+        assertArrayEquals(new int[0], getIndices(cache, noMatch));
+
+        // Literals which are not covered are still found
+        assertArrayEquals(new int[]{1, 3}, getIndices(cache, notCovered));
+    }
 
-        // Test caching
-        final int[] indices = cache.getIndices(ab);
-        assertSame(indices, cache.getIndices(ab));
+    @Test
+    public void testWideValues() {
+        final Literal wide = myLiterals.getLiteral("\u0101?b");
+        final Literal anyChar = myLiterals.getLiteral("x?b");
+        final Literal substitute = myLiterals.getLiteral("\u001ab");
+        assertTrue(wide.isWide());
+        assertFalse(anyChar.isWide());
+        assertTrue(substitute.isWide());
+        assertEquals("\u0101?b", wide.toString());
+
+        final LiteralAutomaton automaton = new LiteralAutomaton(Arrays.asList(wide, anyChar, substitute));
+        assertFalse(automaton.covers(wide));
+        for (final LiteralAutomaton a : Arrays.asList(null, automaton)) {
+
+            // The characters which aren't Latin-1 are only matched by themselves and question marks
+            final SearchableString value = new SearchableString("\u0100xbx\u010cb", myLiterals.size(), a);
+            assertEquals("\u0101xbx\u010db", value.toString());
+            assertArrayEquals(new int[]{0}, getIndices(value, wide));
+            assertArrayEquals(new int[]{3}, getIndices(value, anyChar));
+            assertArrayEquals(new int[0], getIndices(value, substitute));
+
+            // Latin-1 values are stored as bytes, including the substitute character
+            value.reset("\u00e9\u001aB");
+            assertEquals("\u00e9\u001ab", value.toString());
+            assertArrayEquals(new int[0], getIndices(value, wide));
+            assertArrayEquals(new int[]{1}, getIndices(value, substitute));
+        }
     }
 
     @Test
     public void testCache() {
-        final SearchableString.Cache cache = new SearchableString.Cache();
+        final SearchableString.Cache cache = new SearchableString.Cache(2);
 
         assertNull(cache.get(0));
         cache.set(0, true);
@@ -69,33 +154,66 @@ public class SearchableStringTest {
         assertNull(cache.get(1));
         cache.set(1, false);
         assertFalse(cache.get(1));
+
+        cache.clear();
+        assertNull(cache.get(0));
+        assertNull(cache.get(1));
     }
 
     @Test
     public void testLiteralBasics() {
         final String input = "abcdef";
-        final Literal literal = new Literal(input);
+        final Literal literal = myLiterals.getLiteral(input);
         assertEquals(input.length(), literal.getLength());
-        assertEquals('a', literal.getFirstChar());
+        assertEquals('a', literal.getFirstByte());
         assertEquals(input, literal.toString());
     }
 
     @Test
     public void testLiteralMatches() {
         final String input = "def";
-        final Literal literal = new Literal(input);
+        final Literal literal = myLiterals.getLiteral(input);
 
         // Test for matches also with invalid bounds
-        final char[] search = "abcdef".toCharArray();
+        final byte[] search = "abcdef".getBytes(StandardCharsets.ISO_8859_1);
         assertTrue(literal.matches(search, 3));
         assertFalse(literal.matches(search, 0));
         assertFalse(literal.matches(search, 5));
         assertFalse(literal.matches(search, -10));
         assertFalse(literal.matches(search, 100));
 
-        final Literal joker = new Literal("d?f");
+        // Only the first characters are valid
+        assertFalse(literal.matches(search, 5, 3));
+        assertTrue(literal.matches(search, 6, 3));
+
+        final Literal joker = myLiterals.getLiteral("d?f");
         assertTrue(joker.matches(search, 3));
         assertFalse(literal.matches(search, 0));
         assertFalse(literal.matches(search, 5));
     }
+
+    @Test
+    public void testLiteralContains() {
+        final Literal literal = myLiterals.getLiteral("android?4.0");
+
+        assertTrue(literal.contains("android?4"));
+        assertTrue(literal.contains("4.0"));
+        assertTrue(literal.contains("android?4.0"));
+        assertFalse(literal.contains("android 4"));
+        assertFalse(literal.contains("android?4.0.1"));
+
+        assertTrue(literal.startsWith("android"));
+        assertTrue(literal.startsWith("android?4.0"));
+        assertFalse(literal.startsWith("4.0"));
+        assertFalse(literal.startsWith("android?4.0.1"));
+    }
+
+    private static int[] getIndices(final SearchableString value, final Literal literal) {
+        final int[] result = new int[value.getSize()];
+        int count = 0;
+        for (int i = value.indexOf(literal, 0); i >= 0; i = value.indexOf(literal, i + 1)) {
+            result[count++] = i;
+        }
+        return Arrays.copyOf(result, count);
+    }
 }
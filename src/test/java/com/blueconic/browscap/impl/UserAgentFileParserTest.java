@@ -3,13 +3,26 @@ package com.blueconic.browscap.impl;
 import static com.blueconic.browscap.impl.CapabilitiesImpl.DEFAULT;
 import static com.blueconic.browscap.impl.UserAgentFileParser.getParts;
 import static com.blueconic.browscap.impl.UserAgentFileParser.getValue;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+
 import org.junit.Test;
 
+import com.blueconic.browscap.BrowsCapField;
+import com.blueconic.browscap.Capabilities;
+import com.blueconic.browscap.ParseException;
+import com.blueconic.browscap.UserAgentParser;
+
 import com.blueconic.browscap.impl.Literal;
 import com.blueconic.browscap.impl.Rule;
 import com.blueconic.browscap.impl.UserAgentFileParser;
@@ -79,6 +92,138 @@ public class UserAgentFileParserTest {
         }
     }
 
+    @Test
+    public void testLiteralRegistry() {
+        final UserAgentFileParser parser = new UserAgentFileParser();
+        final Literal abc = parser.getLiteral("abc");
+        final Literal def = parser.getLiteral("def");
+        assertSame(abc, parser.getLiteral("abc"));
+        assertEquals(0, abc.getIndex());
+        assertEquals(1, def.getIndex());
+        assertEquals(2, parser.getLiterals().size());
+
+        // Indices are scoped to a single rule set
+        final UserAgentFileParser other = new UserAgentFileParser();
+        assertEquals(0, other.getLiteral("def").getIndex());
+        assertEquals(1, other.getLiterals().size());
+    }
+
+    @Test
+    public void testParseChunks() throws Exception {
+
+        // Use more rows than are converted by a single task
+        final StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            csv.append(getRow("test" + i + "*", "Browser" + i));
+        }
+        final UserAgentParser parser = new UserAgentFileParser().parse(getInput(csv));
+
+        assertEquals(10000, parser.getRules().length);
+        assertEquals("Browser123", parser.parse("test123").getBrowser());
+        assertEquals("Browser9999", parser.parse("test9999 agent").getBrowser());
+    }
+
+    @Test
+    public void testParseReader() throws Exception {
+        final String csv = getRow("Test*", "Tést \uD83D\uDE00") + getRow("Other*", "Other");
+        final UserAgentParser parser = new UserAgentFileParser().parse(new StringReader(csv));
+
+        assertEquals(2, parser.getRules().length);
+        assertEquals("Tést \uD83D\uDE00", parser.parse("test agent").getBrowser());
+        assertEquals("Other", parser.parse("other agent").getBrowser());
+    }
+
+    @Test
+    public void testParsePattern() throws Exception {
+        final String csv = getRow("Test*Agent (?)*", "Test") + getRow("*", "Default");
+        final UserAgentParser parser = new UserAgentFileParser().parse(getInput(csv));
+
+        // The regex is derived from the normalized pattern of the rule
+        assertEquals("^test.*?agent \\(.\\).*?$", parser.getPattern("test x agent (1)"));
+        assertEquals("^.*?$", parser.getPattern("other"));
+    }
+
+    @Test
+    public void testParseMatchAll() throws Exception {
+        final String csv = getRow("Test*", "Test") + getRow("*", "Default Browser", "0");
+        final UserAgentParser parser = new UserAgentFileParser().parse(getInput(csv));
+
+        // The match all rule has the browser of its own record, unlike the default capabilities
+        assertEquals("Default Browser", parser.parse("other").getBrowser());
+        assertEquals(Capabilities.UNKNOWN_BROWSCAP_VALUE, parser.parse("other").getBrowserMajorVersion());
+        assertEquals(Capabilities.UNKNOWN_BROWSCAP_VALUE, DEFAULT.getBrowser());
+        final UserAgentParser withoutMatchAll = new UserAgentFileParser().parse(getInput(getRow("Test*", "Test")));
+        assertSame(DEFAULT, withoutMatchAll.parse("other"));
+    }
+
+    @Test
+    public void testParseSharedCapabilities() throws Exception {
+        final String csv = getRow("Test*", "Test") + getRow("Other Agent*", "Test") + getRow("Third*", "Third");
+        final UserAgentParser parser = new UserAgentFileParser().parse(getInput(csv));
+
+        // Rules with equal properties share their capabilities, while the parser knows the pattern of each rule
+        final Capabilities test = parser.parse("test agent");
+        final Capabilities other = parser.parse("other agent 1");
+        final Capabilities third = parser.parse("third agent");
+        assertSame(test, other);
+        assertNotSame(test, third);
+        assertNotEquals(test, third);
+        assertEquals(Capabilities.UNKNOWN_BROWSCAP_VALUE, test.getPattern());
+        assertEquals("^test.*?$", parser.getPattern("test agent"));
+        assertEquals("^other agent.*?$", parser.getPattern("other agent 1"));
+        assertEquals(3, parser.getRules().length);
+    }
+
+    @Test
+    public void testParseCodes() throws Exception {
+        final String csv = getRow("Test*", "Test") + getRow("Other*", "Other") + getRow("Third*", "Test");
+        final UserAgentParser parser = new UserAgentFileParser().parse(getInput(csv));
+
+        // Equal values have equal codes, which refer to the values of the parser
+        final int test = parser.parse("test agent").getCode(BrowsCapField.BROWSER);
+        assertEquals(test, parser.parse("third agent").getCode(BrowsCapField.BROWSER));
+        assertNotEquals(test, parser.parse("other agent").getCode(BrowsCapField.BROWSER));
+        final Capabilities capabilities = parser.parse("test agent");
+        assertEquals("Test", capabilities.getValues(BrowsCapField.BROWSER).get(test));
+        assertEquals(0, capabilities.getCode(BrowsCapField.DEVICE_TYPE));
+        assertEquals(Capabilities.UNKNOWN_BROWSCAP_VALUE, capabilities.getValues(BrowsCapField.DEVICE_TYPE).get(0));
+        assertSame(capabilities.getValues(BrowsCapField.BROWSER),
+                parser.parse("other agent").getValues(BrowsCapField.BROWSER));
+
+        // The default capabilities have the same codes in each parser
+        final Capabilities unknown = parser.parse("unknown agent");
+        assertSame(DEFAULT, unknown);
+        final int browser = unknown.getCode(BrowsCapField.BROWSER);
+        assertEquals(Capabilities.UNKNOWN_BROWSCAP_VALUE, unknown.getValues(BrowsCapField.BROWSER).get(browser));
+        assertEquals(Capabilities.UNKNOWN_BROWSCAP_VALUE, capabilities.getValues(BrowsCapField.BROWSER).get(browser));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testParseInvalidPattern() throws Exception {
+        final StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            csv.append(getRow(i == 5000 ? "" : "test" + i, "Browser"));
+        }
+        new UserAgentFileParser().parse(getInput(csv));
+    }
+
+    private static String getRow(final String pattern, final String browser) {
+        return getRow(pattern, browser, "");
+    }
+
+    private static String getRow(final String pattern, final String browser, final String majorVersion) {
+        final String[] fields = new String[48];
+        Arrays.fill(fields, "");
+        fields[0] = pattern;
+        fields[5] = browser;
+        fields[11] = majorVersion;
+        return String.join(",", fields) + "\n";
+    }
+
+    private static InputStream getInput(final CharSequence csv) {
+        return new ByteArrayInputStream(csv.toString().getBytes(UTF_8));
+    }
+
     @Test
     public void testGetValue() {
 
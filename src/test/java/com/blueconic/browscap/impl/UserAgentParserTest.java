@@ -13,20 +13,24 @@ import static com.blueconic.browscap.impl.UserAgentParserImpl.getOrderedRules;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.BitSet;
+import java.util.regex.Pattern;
 
 import org.junit.Test;
 
+import com.blueconic.browscap.Capabilities;
 import com.blueconic.browscap.impl.Rule;
-import com.blueconic.browscap.impl.SearchableString;
 import com.blueconic.browscap.impl.UserAgentFileParser;
 import com.blueconic.browscap.impl.UserAgentParserImpl;
-import com.blueconic.browscap.impl.UserAgentParserImpl.Filter;
 
 public class UserAgentParserTest {
 
+    private final UserAgentFileParser myParser = new UserAgentFileParser();
+
     @Test
     public void testExcludes() {
 
@@ -59,35 +63,30 @@ public class UserAgentParserTest {
     }
 
     @Test
-    public void testGetIncludes() {
-        final Rule a = getRule("test*123*abc*");
-        final Rule b = getRule("*test*abcd*");
-        final Rule c = getRule("*123*test");
-        final Rule d = getRule("*123*");
-        final Rule[] rules = {a, b, c, d};
-
-        final UserAgentParserImpl parser = new UserAgentParserImpl(rules);
-
-        final Filter startsWithTest = parser.createPrefixFilter("test");
-        final Filter containsTest = parser.createContainsFilter("test");
-        final Filter containsNumbers = parser.createContainsFilter("123");
-        final Filter[] filters = {startsWithTest, containsTest, containsNumbers};
-
-        final SearchableString useragent = new SearchableString("useragent_test_string");
-        final BitSet includeRules = parser.getIncludeRules(useragent, filters);
-
-        // b should be checked
-        assertEquals(1, includeRules.nextSetBit(0));
-        // No further rules to check
-        assertEquals(-1, includeRules.nextSetBit(2));
-
-        final SearchableString numberString = new SearchableString("123456");
-        final BitSet numberIncludes = parser.getIncludeRules(numberString, filters);
-
-        // Only d should be checked
-        assertEquals(3, numberIncludes.nextSetBit(0));
-        // No further rules to check
-        assertEquals(-1, numberIncludes.nextSetBit(4));
+    public void testFilteredCandidates() {
+        final Rule[] rules = {getRule("test*123*abc*", "A"), getRule("*test*abcd*", "B"), getRule("*123*test", "C"),
+                getRule("*123*", "D"), getRule("*abc*", "E")};
+        final UserAgentParserImpl parser =
+                new UserAgentParserImpl(rules, myParser.getLiterals(), myParser.getValueDictionary());
+        assertTrue(parser.getFilters().length > 0);
+
+        // The filters and indices only skip rules which can't match, so the first matching rule is found
+        final Rule[] orderedRules = getOrderedRules(rules);
+        for (final String useragent : new String[]{"test_123_abcd", "useragent_test_abcd", "x123test", "123456",
+                "useragent_test_string", "abc", "test123abc", "TEST abcd 123"}) {
+            Capabilities expected = DEFAULT;
+            for (final Rule rule : orderedRules) {
+                if (Pattern.matches(UserAgentFileParser.toRegex(rule.getPattern()), useragent.toLowerCase())) {
+                    expected = rule.getCapabilities();
+                    break;
+                }
+            }
+            assertEquals(useragent, expected.getBrowser(), parser.parse(useragent).getBrowser());
+        }
+        assertEquals("A", parser.parse("test_123_abcd").getBrowser());
+        assertEquals("B", parser.parse("useragent_test_abcd").getBrowser());
+        assertEquals("D", parser.parse("123456").getBrowser());
+        assertEquals(DEFAULT, parser.parse("useragent_test_string"));
     }
 
     @Test
@@ -107,9 +106,63 @@ public class UserAgentParserTest {
         assertArrayEquals(expected, getOrderedRules(rulesAlt));
     }
 
+    @Test
+    public void testExactRules() {
+        final Rule exact = getRule("test agent", "Exact");
+        final Rule duplicate = getRule("test agent", "Duplicate");
+        final Rule longer = getRule("*test agent*", "Longer");
+        final Rule shorter = getRule("test*", "Shorter");
+        final Rule other = getRule("other agent", "Other");
+        final Rule[] rules = {shorter, duplicate, exact, other};
+
+        final UserAgentParserImpl parser =
+                new UserAgentParserImpl(rules, myParser.getLiterals(), myParser.getValueDictionary());
+        assertEquals("Duplicate", parser.parse("Test Agent").getBrowser());
+        assertEquals("Other", parser.parse("other agent").getBrowser());
+        assertEquals("Shorter", parser.parse("test agent 2").getBrowser());
+        assertEquals(DEFAULT, parser.parse("other agent 2"));
+
+        // A rule with a higher priority is still preferred
+        final Rule[] withLonger = {shorter, exact, longer};
+        final UserAgentParserImpl longerParser = new UserAgentParserImpl(withLonger, myParser.getLiterals(),
+                myParser.getValueDictionary());
+        assertEquals("Longer", longerParser.parse("test agent").getBrowser());
+    }
+
+    @Test
+    public void testParsersOnOneThread() {
+        final UserAgentParserImpl small = new UserAgentParserImpl(new Rule[]{getRule("test*", "Small")},
+                myParser.getLiterals(), myParser.getValueDictionary());
+        final UserAgentFileParser other = new UserAgentFileParser();
+        final Rule[] rules = new Rule[100];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = other.createRule("*agent " + i + "*", new CapabilitiesImpl(other.getValueDictionary(),
+                    "Large " + i, "", "", "", "", "", "", "", "", "", "", ""));
+        }
+        final UserAgentParserImpl large =
+                new UserAgentParserImpl(rules, other.getLiterals(), other.getValueDictionary());
+
+        // Each parser keeps its own context for the thread, which is reused when they alternate
+        final MatchContext smallContext = small.getContext();
+        final MatchContext largeContext = large.getContext();
+        assertNotSame(smallContext, largeContext);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Small", small.parse("test agent 99").getBrowser());
+            assertEquals("Large 99", large.parse("test agent 99").getBrowser());
+            assertEquals(DEFAULT, small.parse("other agent 99"));
+        }
+        assertSame(smallContext, small.getContext());
+        assertSame(largeContext, large.getContext());
+    }
+
+    private Rule getRule(final String pattern, final String browser) {
+        final CapabilitiesImpl capabilities = new CapabilitiesImpl(myParser.getValueDictionary(), browser, "", "", "",
+                "", "", "", "", "", "", "", "");
+        return myParser.createRule(pattern, capabilities);
+    }
+
     private Rule getRule(final String pattern) {
-        final UserAgentFileParser parser = new UserAgentFileParser();
-        final Rule rule = parser.createRule(pattern, DEFAULT);
+        final Rule rule = myParser.createRule(pattern, DEFAULT);
         assertEquals(pattern, rule.getPattern());
         return rule;
     }
@@ -30,6 +30,13 @@ public class UserAgentServiceTest {
         System.out.print("Processed " + counter + " items");
     }
 
+    @Test
+    public void testCsvParser() throws IOException, ParseException {
+        final UserAgentParser parser = new UserAgentService().loadCsvParser();
+        final int counter = processUserAgentFile(parser);
+        System.out.print("Processed " + counter + " items");
+    }
+
     public int processUserAgentFile(final UserAgentParser parser) throws IOException, ParseException {
         final InputStream resourceAsStream = getClass().getClassLoader().getResourceAsStream("useragents.txt");
         final BufferedReader in = new BufferedReader(new InputStreamReader(resourceAsStream));
@@ -0,0 +1,95 @@
+package com.blueconic.browscap.impl;
+
+import static com.blueconic.browscap.BrowsCapField.BROWSER;
+import static com.blueconic.browscap.BrowsCapField.DEVICE_TYPE;
+import static com.blueconic.browscap.Capabilities.UNKNOWN_BROWSCAP_VALUE;
+import static com.blueconic.browscap.impl.CapabilitiesImpl.DEFAULT;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blueconic.browscap.BrowsCapField;
+import com.blueconic.browscap.Capabilities;
+
+public class ValueDictionaryTest {
+
+    @Test
+    public void testCodes() {
+        final ValueDictionary values = new ValueDictionary();
+        final int mobile = values.getCode(DEVICE_TYPE, "Mobile Phone");
+        final int desktop = values.getCode(DEVICE_TYPE, "Desktop");
+        assertEquals(mobile, values.getCode(DEVICE_TYPE, "Mobile Phone"));
+        assertNotEquals(mobile, desktop);
+        assertEquals("Desktop", values.getValue(DEVICE_TYPE, desktop));
+
+        // The codes are scoped to a field
+        assertEquals(1, values.getCode(BROWSER, "Desktop"));
+        assertEquals(3, values.size(DEVICE_TYPE));
+        assertEquals(asList(UNKNOWN_BROWSCAP_VALUE, "Mobile Phone", "Desktop"), values.getValues(DEVICE_TYPE));
+    }
+
+    @Test
+    public void testDefaultCodes() {
+        final ValueDictionary values = new ValueDictionary();
+
+        // The codes of the default capabilities are valid in each dictionary
+        for (final BrowsCapField field : BrowsCapField.values()) {
+            assertEquals(DEFAULT.getValue(field), values.getValue(field, DEFAULT.getCode(field)));
+        }
+        assertEquals(0, values.getCode(DEVICE_TYPE, UNKNOWN_BROWSCAP_VALUE));
+    }
+
+    @Test
+    public void testCapabilities() {
+        final ValueDictionary values = new ValueDictionary();
+        final Capabilities capabilities = new CapabilitiesImpl(values, "Chrome", "Browser", "58", "Desktop", "Win10",
+                "10.0", "Chrome 58", "PC", "Windows Desktop", "Microsoft Corporation", "Various", "Various");
+        for (final BrowsCapField field : BrowsCapField.values()) {
+            assertEquals(capabilities.getValue(field), values.getValue(field, capabilities.getCode(field)));
+        }
+        assertEquals("Desktop", capabilities.getDeviceType());
+        assertEquals("Win10", capabilities.getValue(BrowsCapField.PLATFORM));
+
+        // Capabilities are only equal within a dictionary
+        final Capabilities equal = new CapabilitiesImpl(values, "Chrome", "Browser", "58", "Desktop", "Win10",
+                "10.0", "Chrome 58", "PC", "Windows Desktop", "Microsoft Corporation", "Various", "Various");
+        final Capabilities other = new CapabilitiesImpl(new ValueDictionary(), "Chrome", "Browser", "58", "Desktop",
+                "Win10", "10.0", "Chrome 58", "PC", "Windows Desktop", "Microsoft Corporation", "Various", "Various");
+        assertNotSame(capabilities, equal);
+        assertEquals(capabilities, equal);
+        assertEquals(capabilities.hashCode(), equal.hashCode());
+        assertNotEquals(capabilities, other);
+    }
+
+    @Test
+    public void testValuesView() {
+        final ValueDictionary values = new ValueDictionary();
+        final List<String> browsers = values.getValues(BROWSER);
+        assertSame(browsers, values.getValues(BROWSER));
+        assertNotSame(browsers, new ValueDictionary().getValues(BROWSER));
+
+        // The view contains the values which are added later
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Browser " + i, browsers.get(values.getCode(BROWSER, "Browser " + i)));
+        }
+        assertEquals(values.size(BROWSER), browsers.size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testValuesOutOfBounds() {
+        final ValueDictionary values = new ValueDictionary();
+        values.getValues(BROWSER).get(values.size(BROWSER));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiableValues() {
+        final List<String> values = new ValueDictionary().getValues(BROWSER);
+        values.add("Chrome");
+    }
+}
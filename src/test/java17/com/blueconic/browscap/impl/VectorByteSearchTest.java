@@ -0,0 +1,56 @@
+package com.blueconic.browscap.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the Vector API loops with the plain loops of the Java 8 version of {@link ByteSearch}, which is the one on
+ * the test classpath.
+ */
+public class VectorByteSearchTest {
+
+    private static final int SIZE = 300;
+
+    @Test
+    public void testIndexOf() {
+        final Random random = new Random(42);
+        for (int n = 0; n < 1000; n++) {
+            final byte[] value = getBytes(random, SIZE, "abc");
+            final byte b = (byte) "abcd".charAt(random.nextInt(4));
+            final int from = random.nextInt(SIZE);
+            final int to = from + random.nextInt(SIZE - from + 1);
+            assertEquals(ByteSearch.indexOf(value, b, from, to), VectorByteSearch.indexOf(value, b, from, to));
+        }
+    }
+
+    @Test
+    public void testMatches() {
+        final Random random = new Random(42);
+        for (int n = 0; n < 1000; n++) {
+            final byte[] value = getBytes(random, SIZE, "ab");
+            final int length = random.nextInt(SIZE / 2);
+            final int from = random.nextInt(SIZE - length);
+
+            // A copy of a range of the value with some bytes replaced, either by a question mark or by another byte
+            final int offset = random.nextInt(10);
+            final byte[] pattern = new byte[offset + length];
+            System.arraycopy(value, from, pattern, offset, length);
+            for (int i = random.nextInt(3); i > 0 && length > 0; i--) {
+                pattern[offset + random.nextInt(length)] = (byte) "?ab".charAt(random.nextInt(3));
+            }
+            assertEquals(ByteSearch.matches(pattern, offset, value, from, length),
+                    VectorByteSearch.matches(pattern, offset, value, from, length));
+        }
+    }
+
+    private static byte[] getBytes(final Random random, final int size, final String alphabet) {
+        final byte[] result = new byte[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (byte) alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return result;
+    }
+}